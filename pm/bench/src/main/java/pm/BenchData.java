@@ -0,0 +1,107 @@
+package pm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates scenario catalogs for the benchmarks: a set of stations, each with
+ * a flow and a storage record, in monthly decade blocks spanning 1000 years.
+ * The catalogs are read through CatalogSource, which serves synthetic values
+ * for every record. Each scenario has its own F-part, so values differ between
+ * scenarios. Each catalog also holds the power plant records that ChartPanel2
+ * shows (every station and C-part in ChartPanel2.bParts and cParts), over the
+ * same years.
+ */
+public class BenchData {
+
+	static final int FIRST_DECADE = 1920;
+	static final int DECADES = 100;
+	static final String DATE_RANGE = "OCT1921-SEP2919"; // Whole water years
+	static final String A_PART = "CALSIM";
+	static final String[] C_PARTS = { "FLOW-CHANNEL", "STORAGE" };
+	static final String POWER_A_PART = "HYDROPOWER";
+	static final String POWER_F_PART = "POWERPLANT-GENERATION";
+
+	/**
+	 * Writes one catalog per scenario into a directory.
+	 *
+	 * @param dir
+	 *            directory to write to
+	 * @param scenarios
+	 *            number of scenario files
+	 * @param stations
+	 *            number of stations (B-parts) per file
+	 * @return catalog file names, base first
+	 * @throws IOException
+	 *             if a catalog cannot be written
+	 */
+	public static List<String> writeScenarios(File dir, int scenarios, int stations) throws IOException {
+
+		List<String> files = new ArrayList<String>();
+		for (int k = 0; k < scenarios; k++) {
+			File f = new File(dir, "scenario" + k + TimeSeriesSources.CATALOG_SUFFIX);
+			PrintWriter out = new PrintWriter(f, "ISO-8859-1");
+			try {
+				out.println();
+				out.println("     HECDSS Complete Catalog of Record Pathnames in File " + f.getName());
+				out.println();
+				out.println(" Ref.");
+				out.println(" Number   Tag           Record Pathname");
+				out.println();
+				int ref = 1;
+				for (String name : getNames(stations))
+					for (int d = 0; d < DECADES; d++)
+						out.println(String.format("%6d  T%-8d  /%s/%s/01JAN%d/1MON/BENCH-%d/", ref, ref++, A_PART,
+								name, FIRST_DECADE + 10 * d, k));
+				for (String bPart : ChartPanel2.bParts)
+					for (String cPart : ChartPanel2.cParts)
+						for (int d = 0; d < DECADES; d++)
+							out.println(String.format("%6d  T%-8d  /%s/%s/%s/01JAN%d/1MON/%s/", ref, ref++,
+									POWER_A_PART, bPart, cPart, FIRST_DECADE + 10 * d, POWER_F_PART));
+			} finally {
+				out.close();
+			}
+			files.add(f.getPath());
+		}
+		return files;
+	}
+
+	/**
+	 * @param stations
+	 *            number of stations
+	 * @return dataset names (B/C) for all stations and C-parts, in the form
+	 *         accepted by DSSGrabber1.getOneSeries
+	 */
+	public static List<String> getNames(int stations) {
+		List<String> names = new ArrayList<String>();
+		for (int s = 0; s < stations; s++)
+			for (String cPart : C_PARTS)
+				names.add(String.format("S%03d/%s", s, cPart));
+		return names;
+	}
+
+	/**
+	 * Creates an empty temporary directory, deleted on exit.
+	 */
+	public static File tempDir() throws IOException {
+		File dir = File.createTempFile("pm-bench", "");
+		if (!dir.delete() || !dir.mkdir())
+			throw new IOException("Cannot create " + dir);
+		dir.deleteOnExit();
+		return dir;
+	}
+
+	/**
+	 * Deletes a directory written by writeScenarios.
+	 */
+	public static void delete(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File f : files)
+				f.delete();
+		dir.delete();
+	}
+}
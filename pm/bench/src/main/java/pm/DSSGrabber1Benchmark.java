@@ -0,0 +1,126 @@
+package pm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JList;
+
+import org.jfree.data.time.TimeSeries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * Benchmarks for the DSSGrabber1 paths behind the charts: reading and trimming
+ * one series, unit conversion, differences, exceedance, and reading a whole
+ * station x parameter grid with one getSeries call. chartGridLoad measures
+ * the full ChartPanel2 load: the bulk read of its power plant grid, the
+ * per-station data it caches, and the time series and monthly exceedance
+ * series it builds for the tiles. Data are 1000 years of monthly values per
+ * record, generated by BenchData. The series cache is disabled so that every
+ * read goes to the source.
+ * <p>
+ * Run with -prof gc for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Dpm.seriesCache.maxBytes=0" })
+public class DSSGrabber1Benchmark {
+
+	@Param({ "2", "5", "10" })
+	int scenarios;
+
+	@Param({ "20" })
+	int stations;
+
+	private File dir;
+	private List<String> files;
+	private List<String> names;
+	private DSSGrabber1 dg;
+	private TimeSeriesContainer[] primary;
+	private ChartPanel2 panel;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+
+		dir = BenchData.tempDir();
+		files = BenchData.writeScenarios(dir, scenarios, stations);
+		names = BenchData.getNames(stations);
+
+		dg = new DSSGrabber1(new JList<String>(files.toArray(new String[files.size()])));
+		dg.setDateRange(BenchData.DATE_RANGE);
+		dg.setIsCFS(true); // Conversions then leave the monthly values as read
+		dg.scenarios = scenarios;
+		primary = dg.getSeries(names.subList(0, 1), BenchData.DATE_RANGE, files)[0];
+
+		DG_Handle.getInstance().setScenarios(files);
+		panel = new ChartPanel2();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		HecDssPool.getInstance().closeAll();
+		BenchData.delete(dir);
+	}
+
+	@Benchmark
+	public TimeSeriesContainer readOneSeries() {
+		return dg.getOneSeries(files.get(0), names.get(0), dg.startTime, dg.endTime, new ArrayList<String>());
+	}
+
+	@Benchmark
+	public double[][] calcTAFforCFS() {
+		dg.setOriginalUnits("CFS");
+		dg.calcTAFforCFS(primary, null);
+		return dg.annualTAFs;
+	}
+
+	@Benchmark
+	public double[][] calcCFSforTAF() {
+		dg.setOriginalUnits("TAF");
+		dg.calcCFSforTAF(primary, null);
+		return dg.annualCFSs;
+	}
+
+	@Benchmark
+	public TimeSeriesContainer[] differenceSeries() {
+		return dg.getDifferenceSeries(primary);
+	}
+
+	@Benchmark
+	public TimeSeriesContainer[][] exceedanceSeries() {
+		return dg.getExceedanceSeries(primary);
+	}
+
+	@Benchmark
+	public TimeSeriesContainer[][] gridLoad() {
+		return dg.getSeries(names, BenchData.DATE_RANGE, files);
+	}
+
+	@Benchmark
+	public TimeSeries[][][] chartGridLoad() {
+		panel.clearData();
+		TimeSeries[][][] series = new TimeSeries[13][][];
+		series[0] = panel.getSeries();
+		for (int m = 0; m < 12; m++)
+			series[m + 1] = panel.getExceedanceSeries(m);
+		return series;
+	}
+}
@@ -0,0 +1,95 @@
+package pm;
+
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * Single-series XYDataset read directly from primitive x and y arrays. Unlike
+ * XYSeries, which boxes each point and notifies listeners on every add, the
+ * whole series is replaced at once by setData and listeners are notified once.
+ * The arrays are used as given, not copied, and must not be changed afterwards.
+ */
+public class ArrayXYDataset extends AbstractXYDataset {
+
+	private static final long serialVersionUID = 1L;
+	private static final double[] EMPTY = new double[0];
+
+	private final Comparable<?> key;
+	private double[] x = EMPTY;
+	private double[] y = EMPTY;
+	private int n;
+
+	/**
+	 * @param key
+	 *            series key
+	 */
+	public ArrayXYDataset(Comparable<?> key) {
+		this.key = key;
+	}
+
+	/**
+	 * Replaces the series and sends a single change event.
+	 *
+	 * @param x
+	 *            x values
+	 * @param y
+	 *            y values
+	 * @param n
+	 *            number of points (no more than either array's length)
+	 */
+	public void setData(double[] x, double[] y, int n) {
+		if ((n > x.length) || (n > y.length))
+			throw new IllegalArgumentException("n is longer than the arrays");
+		this.x = x;
+		this.y = y;
+		this.n = n;
+		fireDatasetChanged();
+	}
+
+	/**
+	 * Removes all points and sends a single change event.
+	 */
+	public void clear() {
+		setData(EMPTY, EMPTY, 0);
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return 1;
+	}
+
+	@Override
+	public Comparable<?> getSeriesKey(int series) {
+		return key;
+	}
+
+	@Override
+	public int getItemCount(int series) {
+		return n;
+	}
+
+	@Override
+	public DomainOrder getDomainOrder() {
+		return DomainOrder.NONE;
+	}
+
+	@Override
+	public double getXValue(int series, int item) {
+		return x[item];
+	}
+
+	@Override
+	public double getYValue(int series, int item) {
+		return y[item];
+	}
+
+	@Override
+	public Number getX(int series, int item) {
+		return Double.valueOf(x[item]);
+	}
+
+	@Override
+	public Number getY(int series, int item) {
+		return Double.valueOf(y[item]);
+	}
+}
@@ -0,0 +1,199 @@
+package pm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * Pure-Java TimeSeriesSource serving the records listed in a HEC-DSS catalog
+ * (.dsc) file, for load and concurrency testing without heclib. Every monthly
+ * (1MON) record in the catalog is served as a synthetic series: the values are
+ * a seasonal cycle with noise, generated deterministically from the pathname
+ * and month so that repeated reads (and different runs) see the same data.
+ * Records in other intervals are treated as missing.
+ * <p>
+ * As with heclib, monthly records are stored in decade blocks named by their
+ * D-part; a read with readEntire spans all blocks of the series.
+ */
+public class CatalogSource implements TimeSeriesSource {
+
+	static Logger log = Logger.getLogger(CatalogSource.class.getName());
+
+	static final String MONTHLY = "1MON";
+	static final int MONTHS_PER_BLOCK = 120; // Monthly records are in decades
+	static final int MINUTES_PER_MONTH = 43200; // HEC interval for 1MON
+	static final String MONTHS = "JANFEBMARAPRMAYJUNJULAUGSEPOCTNOVDEC";
+
+	private final String filename;
+	private final List<String> pathnames = new ArrayList<String>();
+
+	// Start (yearMonth) of each block, keyed by pathname without D-part
+
+	private final Map<String, TreeSet<Integer>> blocks = new HashMap<String, TreeSet<Integer>>();
+
+	/**
+	 * Reads a catalog file as written by HEC-DSSVue or the DSSUTL CA command.
+	 * Each record line ends with the record pathname.
+	 *
+	 * @param dscFilename
+	 *            name of .dsc catalog file
+	 * @throws IOException
+	 *             if the catalog cannot be read
+	 */
+	public CatalogSource(String dscFilename) throws IOException {
+
+		filename = dscFilename;
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(new File(dscFilename)), Charset.forName("ISO-8859-1")));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				int i = line.lastIndexOf(' ');
+				String pathname = line.substring(i + 1);
+				if (pathname.startsWith("/") && pathname.endsWith("/") && (pathname.split("/").length == 7))
+					add(pathname);
+			}
+		} finally {
+			reader.close();
+		}
+		log.debug("Catalog " + dscFilename + " lists " + pathnames.size() + " records");
+	}
+
+	private void add(String pathname) {
+
+		pathnames.add(pathname);
+		String[] parts = pathname.split("/");
+		if (!parts[5].equals(MONTHLY))
+			return;
+		int start = parseDPart(parts[4]);
+		if (start == Integer.MIN_VALUE)
+			return;
+		String key = keyFor(parts);
+		TreeSet<Integer> set = blocks.get(key);
+		if (set == null) {
+			set = new TreeSet<Integer>();
+			blocks.put(key, set);
+		}
+		set.add(start);
+	}
+
+	@Override
+	public List<String> getPathnameList() {
+		return Collections.unmodifiableList(pathnames);
+	}
+
+	@Override
+	public TimeSeriesContainer get(String pathname, boolean readEntire) {
+
+		String[] parts = pathname.split("/");
+		if (parts.length != 7)
+			return null;
+		TreeSet<Integer> set = blocks.get(keyFor(parts));
+		if (set == null)
+			return null;
+
+		int first;
+		int last;
+		if (readEntire) {
+			first = set.first();
+			last = set.last();
+		} else {
+			first = parseDPart(parts[4]);
+			if (!set.contains(first))
+				return null;
+			last = first;
+		}
+		int n = last - first + MONTHS_PER_BLOCK;
+
+		int seed = keyFor(parts).hashCode();
+		TimeSeriesContainer tsc = new TimeSeriesContainer();
+		tsc.times = new int[n];
+		tsc.values = new double[n];
+		for (int j = 0; j < n; j++) {
+			tsc.times[j] = WaterYearCalendar.endOfMonth(first + j);
+			tsc.values[j] = value(seed, first + j);
+		}
+		tsc.numberValues = n;
+		tsc.startTime = tsc.times[0];
+		tsc.endTime = tsc.times[n - 1];
+		tsc.interval = MINUTES_PER_MONTH;
+		tsc.fullName = "/" + parts[1] + "/" + parts[2] + "/" + parts[3] + "/" + formatDPart(first) + "/" + parts[5]
+				+ "/" + parts[6] + "/";
+		tsc.fileName = filename;
+		tsc.units = unitsFor(parts[3]);
+		tsc.type = tsc.units.equals("CFS") ? "PER-AVER" : "PER-CUM";
+		return tsc;
+	}
+
+	@Override
+	public void close() {
+		// Nothing held open
+	}
+
+	private static String keyFor(String[] parts) {
+		return parts[1] + "/" + parts[2] + "/" + parts[3] + "/" + parts[5] + "/" + parts[6];
+	}
+
+	/**
+	 * @return yearMonth of the decade block containing a D-part date such as
+	 *         01JAN1930, or Integer.MIN_VALUE if it cannot be parsed
+	 */
+	static int parseDPart(String dPart) {
+		try {
+			int m = MONTHS.indexOf(dPart.substring(2, 5).toUpperCase());
+			int y = Integer.parseInt(dPart.substring(5));
+			if ((m < 0) || (m % 3 != 0))
+				return Integer.MIN_VALUE;
+			return (y - Math.floorMod(y, 10)) * 12;
+		} catch (RuntimeException e) {
+			return Integer.MIN_VALUE;
+		}
+	}
+
+	private static String formatDPart(int yearMonth) {
+		int m = WaterYearCalendar.month(yearMonth);
+		return "01" + MONTHS.substring(3 * m - 3, 3 * m) + WaterYearCalendar.year(yearMonth);
+	}
+
+	private static String unitsFor(String cPart) {
+		if (cPart.startsWith("FLOW"))
+			return "CFS";
+		if (cPart.startsWith("STORAGE"))
+			return "TAF";
+		if (cPart.startsWith("SALINITY") || cPart.startsWith("EC"))
+			return "UMHOS/CM";
+		return "NONE";
+	}
+
+	/**
+	 * Synthetic monthly value: a per-series base level with a seasonal cycle
+	 * and noise, all derived from the series seed and month.
+	 */
+	static double value(int seed, int yearMonth) {
+		double base = 100 + (seed & 0x3ff);
+		double phase = ((seed >>> 10) & 0xff) / 40.0;
+		double seasonal = Math.sin(2 * Math.PI * Math.floorMod(yearMonth, 12) / 12 + phase);
+		double noise = (mix(seed * 31L + yearMonth) >>> 11) * 0x1.0p-53; // [0,1)
+		return base * (1 + 0.5 * seasonal) * (0.75 + 0.5 * noise);
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
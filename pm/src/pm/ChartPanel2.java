@@ -3,75 +3,303 @@ package pm;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.GridLayout;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.swing.JPanel;
+import javax.swing.SwingWorker;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
 import org.jfree.data.time.Month;
 import org.jfree.data.time.TimeSeries;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
 
-import hec.heclib.util.HecTime;
 import hec.io.TimeSeriesContainer;
 
 public class ChartPanel2 extends JPanel {
 
+	static final String DATE_RANGE = "FEB1924-feb2003";
+	private static final String LOADING = "Loading...";
+	private static final String NO_DATA = "No data";
+	private static final int SKETCH_POINTS = Integer.getInteger("pm.exceedance.sketchPoints", 101);
+
 	private JFreeChart[] charts = new JFreeChart[12];
-	private String[] bParts = { "CARRPP", "CVPSANLUISPP", "FOLSOMPP", "KESWICKPP", "NIMBUSPP", "ONEILPP", "SHASTAPP",
-			"SPRINGCREEKPP", "TRINITYPP" };
-	private String[] cParts = { "ENERGY", "FORGONE", "RELEASE", "SPILL" };
-
-	private TimeSeries[][] series;
-	private TimeSeries[][][] ex_series;
-	private XYSeries[] dataSeries = new XYSeries[12];
-	private XYSeriesCollection[] xydatasets = new XYSeriesCollection[12];
+
+	// Stations and parameters shown, shared with PM_Panel and PM_Batch
+
+	static final String[] bParts = { "CARRPP", "CVPSANLUISPP", "FOLSOMPP", "KESWICKPP", "NIMBUSPP", "ONEILPP",
+			"SHASTAPP", "SPRINGCREEKPP", "TRINITYPP" };
+	static final String[] cParts = { "ENERGY", "FORGONE", "RELEASE", "SPILL" };
+
+	private final Map<String, StationData> cache = new HashMap<String, StationData>();
+	private ArrayXYDataset[] datasets = new ArrayXYDataset[12];
+	private double[][] tileX = new double[12][]; // Full series for each tile
+	private double[][] tileY = new double[12][];
+	private double[][] tileView = new double[12][]; // Width and x range last drawn
 	private ChartPanel[] panels = new ChartPanel[12];
 
+	private TileLoader loader; // Background load for the current view
+	private String currentBPart = ""; // Current view
+	private String currentCPart = "";
+	private String currentMonth = "";
+	private volatile int sketchK = Integer.getInteger("pm.exceedance.sketchK", 0); // 0 for exact
+
+	static String seriesName(int b, int c) {
+		return "*/HYDROPOWER/" + bParts[b] + "/" + cParts[c] + "/01JAN1930/1MON/POWERPLANT-GENERATION/";
+	}
+
 	/**
-	 * Reads data in bulk
+	 * Results for one station and C-part, read on first use. The time series
+	 * and each month's exceedance series are derived only when a chart asks
+	 * for them. Exceedance series and sketches are published only once fully
+	 * built, so the event dispatch thread can check for them without locking.
 	 */
-	private void readManyTimeSeries() {
-		DSSGrabber1 dg = DG_Handle.getInstance().getDG();
-		series = new TimeSeries[bParts.length][cParts.length];
-		ex_series = new TimeSeries[bParts.length][cParts.length][14];
-		HecTime ht = new HecTime();
-		for (int i = 0; i < bParts.length; i++) {
-			for (int j = 0; j < cParts.length; j++) {
+	private static class StationData {
+		final TimeSeriesContainer[] tscs;
+		TimeSeries series;
+		final AtomicReferenceArray<TimeSeries> ex_series = new AtomicReferenceArray<TimeSeries>(14);
+		volatile QuantileSketch[] sketches; // Base scenario, by month index
+
+		StationData(TimeSeriesContainer[] tscs) {
+			this.tscs = tscs;
+		}
 
-				dg.setBase(DG_Handle.getInstance().getBaseName());
-				String seriesName = "/HYDROPOWER/" + bParts[i] + "/" + cParts[j]
-						+ "/01JAN1930/1MON/POWERPLANT-GENERATION/";
-				dg.setLocation("*" + seriesName);
-				dg.setDateRange("FEB1924-feb2003");
-				dg.checkReadiness();
+		boolean hasData() {
+			return (tscs != null) && (tscs[0] != null);
+		}
+	}
 
-				TimeSeriesContainer[] tscs = dg.getPrimarySeries(seriesName);
-				series[i][j] = new TimeSeries(bParts[i] + "/" + cParts[j]);
+	private String key(int b, int c) {
+		return bParts[b] + "/" + cParts[c];
+	}
+
+	/**
+	 * Reads data in bulk for every station and C-part not loaded yet. Runs on
+	 * the calling thread. Nothing is cached if the read is interrupted, so
+	 * that a later call reads the data again.
+	 *
+	 * @return false if the read was interrupted
+	 */
+	private boolean readManyTimeSeries() {
+		DSSGrabber1 dg = DG_Handle.getInstance().getDG();
 
-				for (int k = 0; k < tscs[0].numberValues; k++) {
-					ht.set(tscs[0].times[k]);
-					series[i][j].addOrUpdate(new Month(ht.month(), ht.year()), tscs[0].values[k]);
+		List<int[]> cells = new ArrayList<int[]>();
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < bParts.length; i++)
+			for (int j = 0; j < cParts.length; j++)
+				if (getCached(i, j) == null) {
+					cells.add(new int[] { i, j });
+					names.add(seriesName(i, j));
 				}
+		if (names.isEmpty())
+			return true;
+
+		// One bulk read for all missing cells of the station x C-part grid
+
+		TimeSeriesContainer[][] all = dg.getSeries(names, DATE_RANGE, DG_Handle.getInstance().getScenarios());
+		if ((all == null) || Thread.currentThread().isInterrupted())
+			return false; // Partial results; never cache them
+		for (int k = 0; k < cells.size(); k++)
+			store(cells.get(k)[0], cells.get(k)[1], new StationData(all[k]));
+		return true;
+	}
 
-				TimeSeriesContainer[][] ex_tscs = dg.getExceedanceSeries(tscs);
-				for (int l = 0; l < 14; l++) {
-					ex_series[i][j][l] = new TimeSeries(bParts[i] + "/" + cParts[j] + " " + Integer.toString(l));
-					for (int k = 0; k < ex_tscs[l][0].numberValues; k++) {
-						ht.set(tscs[0].times[k]);
-						ex_series[i][j][l].addOrUpdate(new Month(ht.month(), ht.year()), ex_tscs[l][0].values[k]);
-					}
+	/**
+	 * Gets data for one station and C-part, reading it if it is not cached
+	 * yet.
+	 *
+	 * @param b
+	 *            index into bParts
+	 * @param c
+	 *            index into cParts
+	 * @return cached data, or null if the read was interrupted (nothing is
+	 *         cached then)
+	 */
+	private StationData getData(int b, int c) {
+		StationData d = getCached(b, c);
+		if (d == null) {
+			DSSGrabber1 dg = DG_Handle.getInstance().getDG();
+			List<String> names = new ArrayList<String>();
+			names.add(seriesName(b, c));
+			TimeSeriesContainer[][] all = dg.getSeries(names, DATE_RANGE, DG_Handle.getInstance().getScenarios());
+			if ((all == null) || Thread.currentThread().isInterrupted())
+				return null; // Partial results; never cache them
+			d = store(b, c, new StationData(all[0]));
+		}
+		return d;
+	}
+
+	private synchronized StationData getCached(int b, int c) {
+		return cache.get(key(b, c));
+	}
+
+	private synchronized StationData store(int b, int c, StationData d) {
+		StationData old = cache.get(key(b, c));
+		if (old != null)
+			return old; // Another load got there first
+		cache.put(key(b, c), d);
+		return d;
+	}
+
+	/**
+	 * Gets the time series (base scenario) for one station and C-part,
+	 * building it on first use.
+	 */
+	private TimeSeries getTimeSeries(int b, int c, StationData d) {
+		synchronized (d) {
+			if (d.series == null) {
+				long t0 = System.nanoTime();
+				d.series = new TimeSeries(key(b, c));
+				if (d.hasData())
+					addMonthly(d.series, d.tscs[0].times, d.tscs[0].values, d.tscs[0].numberValues);
+				PipelineMetrics.record(PipelineMetrics.Stage.CHART_BUILD, t0, d.series.getItemCount());
+			}
+			return d.series;
+		}
+	}
+
+	/**
+	 * Adds monthly values to a time series with a single change event rather
+	 * than one per value.
+	 *
+	 * @param series
+	 *            series to add to
+	 * @param times
+	 *            HEC times, in ascending order
+	 * @param values
+	 *            values
+	 * @param n
+	 *            number of values to add
+	 */
+	private static void addMonthly(TimeSeries series, int[] times, double[] values, int n) {
+		Month last = null;
+		for (int k = 0; k < n; k++) {
+			int ym = WaterYearCalendar.yearMonth(times[k]);
+			Month p = new Month(WaterYearCalendar.month(ym), WaterYearCalendar.year(ym));
+			if (p.equals(last))
+				series.addOrUpdate(p, values[k]); // Two values in one month
+			else
+				series.add(p, values[k], false);
+			last = p;
+		}
+		series.fireSeriesChanged();
+	}
+
+	/**
+	 * Gets the exceedance series (base scenario) for one station, C-part and
+	 * month index, building it on first use.
+	 */
+	private TimeSeries getExceedance(int b, int c, int m, StationData d) {
+		synchronized (d) {
+			TimeSeries ex = d.ex_series.get(m);
+			if (ex == null) {
+				long t0 = System.nanoTime();
+				ex = new TimeSeries(key(b, c) + " " + Integer.toString(m));
+				if (d.hasData()) {
+					TimeSeriesContainer[] ex_tscs = DG_Handle.getInstance().getDG().getExceedanceSeries(d.tscs, m);
+					addMonthly(ex, d.tscs[0].times, ex_tscs[0].values, ex_tscs[0].numberValues);
 				}
+				PipelineMetrics.record(PipelineMetrics.Stage.CHART_BUILD, t0, ex.getItemCount());
+				d.ex_series.set(m, ex);
 			}
+			return ex;
 		}
 	}
 
+	/**
+	 * Gets the approximate exceedance distribution (base scenario) for one
+	 * station, C-part and month index. Sketches for every month are built
+	 * together on first use.
+	 */
+	private QuantileSketch getSketch(int m, StationData d) {
+		synchronized (d) {
+			if (d.sketches == null) {
+				QuantileSketch[][] all = d.hasData()
+						? DG_Handle.getInstance().getDG().getExceedanceSketches(d.tscs, sketchK) : null;
+				QuantileSketch[] sketches = new QuantileSketch[14];
+				for (int k = 0; k < 14; k++)
+					sketches[k] = (all == null) ? new QuantileSketch(sketchK) : all[k][0];
+				d.sketches = sketches;
+			}
+			return d.sketches[m];
+		}
+	}
+
+	/**
+	 * Switches between exact exceedance curves, which sort every value, and
+	 * approximate ones drawn at a fixed number of percentile points from a
+	 * quantile sketch. Approximate curves use far less time and memory on
+	 * very long records. Takes effect at the next resetCharts.
+	 *
+	 * @param k
+	 *            sketch accuracy parameter (see QuantileSketch), or 0 for
+	 *            exact curves
+	 */
+	public void setApproximateExceedance(int k) {
+		sketchK = k;
+		synchronized (this) {
+			for (StationData d : cache.values())
+				synchronized (d) {
+					d.sketches = null;
+				}
+		}
+	}
+
+	/**
+	 * Gets time series for all stations and C-parts, reading any that have not
+	 * been loaded yet (blocking the caller until they are).
+	 *
+	 * @return array [station][C-part] of time series, or null if the calling
+	 *         thread was interrupted while reading
+	 */
 	public TimeSeries[][] getSeries() {
+		if (!readManyTimeSeries())
+			return null;
+		TimeSeries[][] series = new TimeSeries[bParts.length][cParts.length];
+		for (int i = 0; i < bParts.length; i++)
+			for (int j = 0; j < cParts.length; j++)
+				series[i][j] = getTimeSeries(i, j, getCached(i, j));
 		return series;
 	}
 
+	/**
+	 * Gets exceedance series (base scenario) for all stations and C-parts for
+	 * one month, reading any data that have not been loaded yet (blocking the
+	 * caller until they are).
+	 *
+	 * @param m
+	 *            month index, 0 for January to 11 for December
+	 * @return array [station][C-part] of exceedance series, or null if the
+	 *         calling thread was interrupted while reading
+	 */
+	public TimeSeries[][] getExceedanceSeries(int m) {
+		if (!readManyTimeSeries())
+			return null;
+		TimeSeries[][] series = new TimeSeries[bParts.length][cParts.length];
+		for (int i = 0; i < bParts.length; i++)
+			for (int j = 0; j < cParts.length; j++)
+				series[i][j] = getExceedance(i, j, m, getCached(i, j));
+		return series;
+	}
+
+	/**
+	 * Drops all data read so far, e.g. after the scenario list has changed.
+	 * Views built afterwards read their data again.
+	 */
+	public synchronized void clearData() {
+		cache.clear();
+	}
+
 	private int getMonth(String month) {
 		int i = "janfebmaraprmayjunjulaugsepoctnovdec".indexOf(month.toLowerCase()) / 3;
 		return i;
@@ -94,8 +322,10 @@ public class ChartPanel2 extends JPanel {
 	}
 
 	/**
-	 * Provides access to array by month or by station of a parameter
-	 * 
+	 * Provides access to array by month or by station of a parameter. No data
+	 * is read here; each tile is filled in the background once its data
+	 * arrives.
+	 *
 	 * @param bPart
 	 * @param cPart
 	 * @param month
@@ -104,14 +334,13 @@ public class ChartPanel2 extends JPanel {
 
 		super();
 
-		readManyTimeSeries();
 		this.setLayout(new GridLayout(0, 4));
 		// Set up time series charts
 		for (int i = 0; i < 12; i++) {
-			dataSeries[i] = new XYSeries("");
-			xydatasets[i] = new XYSeriesCollection();
+			datasets[i] = new ArrayXYDataset("");
 
 			charts[i] = ChartFactory.createXYLineChart("", "", "", null, false);
+			charts[i].getXYPlot().setNoDataMessage(LOADING);
 			panels[i] = new ChartPanel(charts[i]);
 			panels[i].setMaximumDrawHeight(1200);
 			panels[i].setMaximumDrawWidth(1920);
@@ -119,12 +348,30 @@ public class ChartPanel2 extends JPanel {
 			panels[i].setMinimumDrawWidth(300);
 			panels[i].setPreferredSize(new Dimension(300, 200));
 
+			// Re-decimate when the tile is resized or zoomed
+
+			final int tile = i;
+			panels[i].addComponentListener(new ComponentAdapter() {
+				@Override
+				public void componentResized(ComponentEvent e) {
+					decimate(tile);
+				}
+			});
+			charts[i].getXYPlot().getDomainAxis().addChangeListener(new AxisChangeListener() {
+				@Override
+				public void axisChanged(AxisChangeEvent e) {
+					decimate(tile);
+				}
+			});
 		}
 	}
 
 	/**
-	 * Remove all chart subpanels from panel, then rebuild
-	 * 
+	 * Remove all chart subpanels from panel, then rebuild. Tiles whose data
+	 * has not been read yet show a placeholder and are filled in by a
+	 * background load; any load still running for a previous view is
+	 * cancelled.
+	 *
 	 * @param bPart
 	 * @param cPart
 	 * @param month
@@ -132,6 +379,13 @@ public class ChartPanel2 extends JPanel {
 	 */
 	public void resetCharts(String bPart, String cPart, String month, boolean isExceedance) {
 
+		if (loader != null)
+			loader.cancel(true);
+
+		currentBPart = bPart;
+		currentCPart = cPart;
+		currentMonth = month;
+
 		for (Component c : this.getComponents())
 			if (c instanceof ChartPanel)
 				this.remove(c);
@@ -141,12 +395,15 @@ public class ChartPanel2 extends JPanel {
 		else
 			buildMonthCharts(bPart, cPart, isExceedance);
 
+		loader = new TileLoader(bPart, cPart, month);
+		loader.execute();
+
 		this.invalidate();
 	}
 
 	/**
 	 * Builds an array by station of charts for a given month
-	 * 
+	 *
 	 * @param month
 	 * @param isExceedance
 	 */
@@ -154,26 +411,7 @@ public class ChartPanel2 extends JPanel {
 		int m = getMonth(month);
 		int c = getCPart(cPart);
 		for (int i = 0; i < bParts.length; i++) {
-
-			// Set series
-
-			dataSeries[i].clear();
-			Integer n = ex_series[i][c][m].getItemCount();
-
-			for (int j = 0; j < n; j++) {
-				dataSeries[i].add(100.0 - 100.0 * j / (n - 1), ex_series[i][c][m].getValue(j));
-			}
-
-			// Build chart
-
-			XYSeriesCollection sc = (XYSeriesCollection) charts[i].getXYPlot().getDataset();
-			if (sc == null) {
-				sc = new XYSeriesCollection();
-				charts[i].getXYPlot().setDataset(sc);
-			} else
-				sc.removeAllSeries();
-
-			sc.addSeries(dataSeries[i]);
+			fillChart(i, i, c, m);
 			panels[i].getChart().getXYPlot().getRangeAxis().setLabel(cPart);
 			panels[i].getChart().setTitle(bParts[i]);
 			this.add(panels[i]);
@@ -186,36 +424,177 @@ public class ChartPanel2 extends JPanel {
 		int b = getBPart(bPart);
 
 		for (int m = 0; m < 12; m++) {
+			fillChart(m, b, c, m);
+			panels[m].getChart().getXYPlot().getRangeAxis().setLabel(cPart);
+			panels[m].getChart()
+					.setTitle(bPart + " - " + "JanFebMarAprMayJunJulAugSepOctNovDec".substring(3 * m, 3 * m + 3));
+			this.add(panels[m]);
+		}
 
-			// Set series
-
-			dataSeries[m].clear();
-			Integer n = ex_series[b][c][m].getItemCount();
+		this.invalidate();
+	}
 
+	/**
+	 * Sets the exceedance series for one tile, or a placeholder if its data
+	 * has not been read or the month not derived yet. Runs on the event
+	 * dispatch thread, so it only uses what is already built and never sorts
+	 * or waits; the TileLoader derives the rest and fills the tile again.
+	 *
+	 * @param tile
+	 *            index of chart
+	 * @param b
+	 *            index into bParts
+	 * @param c
+	 *            index into cParts
+	 * @param m
+	 *            month index into exceedance series
+	 */
+	private void fillChart(int tile, int b, int c, int m) {
+
+		// Set full series, then the decimated points drawn from it
+
+		StationData d = getCached(b, c);
+		QuantileSketch[] sketches = (d == null) ? null : d.sketches;
+		TimeSeries ex = (d == null) ? null : d.ex_series.get(m);
+		boolean loaded = (sketchK > 0) ? (sketches != null) : (ex != null);
+		double[] x = new double[0];
+		double[] y = new double[0];
+		if (loaded && (sketchK > 0)) {
+			QuantileSketch sketch = sketches[m];
+			if (!sketch.isEmpty()) {
+				double[] fractions = new double[SKETCH_POINTS];
+				for (int j = 0; j < SKETCH_POINTS; j++)
+					fractions[j] = (double) j / (SKETCH_POINTS - 1);
+				y = sketch.getQuantiles(fractions);
+				x = new double[SKETCH_POINTS];
+				for (int j = 0; j < SKETCH_POINTS; j++)
+					x[j] = 100.0 - 100.0 * fractions[j];
+			}
+		} else if (loaded) {
+			int n = ex.getItemCount();
+			x = new double[n];
+			y = new double[n];
 			for (int j = 0; j < n; j++) {
-				dataSeries[m].add(100.0 - 100.0 * j / (n - 1), ex_series[b][c][m].getValue(j));
+				x[j] = 100.0 - 100.0 * j / (n - 1);
+				y[j] = ex.getValue(j).doubleValue();
 			}
+		}
+		tileX[tile] = x;
+		tileY[tile] = y;
+		tileView[tile] = null;
+		decimate(tile);
 
-			// Build chart
+		// Build chart
 
-			XYSeriesCollection sc = (XYSeriesCollection) charts[m].getXYPlot().getDataset();
-			if (sc == null) {
-				sc = new XYSeriesCollection();
-				charts[m].getXYPlot().setDataset(sc);
-			} else
-				sc.removeAllSeries();
+		if (charts[tile].getXYPlot().getDataset() != datasets[tile])
+			charts[tile].getXYPlot().setDataset(datasets[tile]);
+		charts[tile].getXYPlot().setNoDataMessage(loaded ? NO_DATA : LOADING);
+	}
 
-			sc.addSeries(dataSeries[m]);
-			panels[m].getChart().getXYPlot().getRangeAxis().setLabel(cPart);
-			panels[m].getChart()
-					.setTitle(bPart + " - " + "JanFebMarAprMayJunJulAugSepOctNovDec".substring(3 * m, 3 * m + 3));
-			this.add(panels[m]);
-		}
+	/**
+	 * Redraws one tile from its full series at the tile's current pixel width
+	 * and domain range. Does nothing if neither has changed since the last
+	 * call.
+	 *
+	 * @param tile
+	 *            index of chart
+	 */
+	private void decimate(int tile) {
+
+		double[] x = tileX[tile];
+		if (x == null)
+			return;
+		int width = panels[tile].getWidth();
+		if (width <= 0)
+			width = panels[tile].getPreferredSize().width;
+
+		double lo = Double.NEGATIVE_INFINITY;
+		double hi = Double.POSITIVE_INFINITY;
+		ValueAxis axis = charts[tile].getXYPlot().getDomainAxis();
+		if ((axis != null) && !axis.isAutoRange()) {
+			lo = axis.getRange().getLowerBound();
+			hi = axis.getRange().getUpperBound();
+		} else
+			for (double v : x)
+				if (!Double.isNaN(v)) {
+					lo = Double.isInfinite(lo) ? v : Math.min(lo, v);
+					hi = Double.isInfinite(hi) ? v : Math.max(hi, v);
+				}
 
-		this.invalidate();
+		double[] view = { width, lo, hi };
+		if (Arrays.equals(view, tileView[tile]))
+			return;
+		tileView[tile] = view;
+
+		double[][] points = Decimator.decimate(x, tileY[tile], x.length, lo, hi, width);
+		datasets[tile].setData(points[0], points[1], points[0].length);
 	}
 
 	public void setTitle(String s) {
 		charts[0].getXYPlot().getRangeAxis().setLabel(s);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Reads the data needed by one view in the background, one station and
+	 * C-part at a time, derives the exceedance series the view shows, and
+	 * fills in each tile on the event dispatch thread as soon as its data is
+	 * available.
+	 */
+	private class TileLoader extends SwingWorker<Void, int[]> {
+
+		private final String bPart;
+		private final String cPart;
+		private final String month;
+
+		TileLoader(String bPart, String cPart, String month) {
+			this.bPart = bPart;
+			this.cPart = cPart;
+			this.month = month;
+		}
+
+		@Override
+		protected Void doInBackground() {
+			int c = getCPart(cPart);
+			if (c < 0)
+				return null;
+			if (bPart.equals("")) {
+				int m = getMonth(month);
+				for (int b = 0; (b < bParts.length) && !isCancelled(); b++)
+					load(b, c, m, m);
+			} else {
+				int b = getBPart(bPart);
+				if (b >= 0)
+					load(b, c, 0, 11);
+			}
+			return null;
+		}
+
+		private void load(int b, int c, int firstMonth, int lastMonth) {
+			StationData d = getData(b, c);
+			if (d == null)
+				return; // Cancelled during the read
+			for (int m = firstMonth; m <= lastMonth; m++)
+				if (sketchK > 0)
+					getSketch(m, d);
+				else
+					getExceedance(b, c, m, d);
+			publish(new int[] { b, c });
+		}
+
+		@Override
+		protected void process(List<int[]> cells) {
+			if (isCancelled() || (loader != this))
+				return;
+			int m = getMonth(currentMonth);
+			for (int[] cell : cells) {
+				if (currentBPart.equals(""))
+					fillChart(cell[0], cell[0], cell[1], m);
+				else
+					for (int month = 0; month < 12; month++)
+						fillChart(month, cell[0], cell[1], month);
+			}
+			revalidate();
+			repaint();
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package pm;
 
+import java.util.Arrays;
+import java.util.List;
+
 import javax.swing.JList;
 
 public class DG_Handle {
@@ -28,4 +31,23 @@ public class DG_Handle {
 	public String getBaseName() {
 		return scens[0];
 	}
+
+	/**
+	 * @return scenario DSS files, base first
+	 */
+	public List<String> getScenarios() {
+		return Arrays.asList(scens);
+	}
+
+	/**
+	 * Replaces the scenario list and the grabber reading it. Data already
+	 * loaded by charts are not dropped (see ChartPanel2.clearData).
+	 *
+	 * @param files
+	 *            scenario DSS files, base first
+	 */
+	public void setScenarios(List<String> files) {
+		scens = files.toArray(new String[files.size()]);
+		dg = new DSSGrabber1(new JList<String>(scens));
+	}
 }
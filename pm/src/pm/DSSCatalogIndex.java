@@ -0,0 +1,207 @@
+package pm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Index of the record pathnames in one HEC-DSS file. The catalog is read once
+ * per file and kept until the file's modification time changes, so every
+ * DSSGrabber1 instance shares it. Pathname parts are interned and records are
+ * looked up by B- and C-part (and optionally F-part) through hash maps.
+ * <p>
+ * Each file's index is built by the first thread to ask for it, without
+ * holding up threads building the indexes of other files; threads asking for
+ * the same file meanwhile wait for that build rather than repeating it.
+ */
+public class DSSCatalogIndex {
+
+	static Logger log = Logger.getLogger(DSSCatalogIndex.class.getName());
+
+	private static final ConcurrentMap<String, FutureTask<DSSCatalogIndex>> indexes =
+			new ConcurrentHashMap<String, FutureTask<DSSCatalogIndex>>();
+
+	private final long lastModified;
+	private final String aPart; // A- and F-part of first record in file
+	private final String fPart;
+	private final int size;
+	private final Map<String, List<String>> byBC = new HashMap<String, List<String>>();
+	private final Map<String, List<String>> byBCF = new HashMap<String, List<String>>();
+
+	/**
+	 * Gets the catalog index for a DSS file, building it from the open handle if
+	 * there is none yet or the file has changed since it was built.
+	 *
+	 * @param dssFilename
+	 *            name of HEC DSS file
+	 * @param hD
+	 *            open handle for the same file
+	 * @return catalog index for the file
+	 * @throws Exception
+	 *             if the catalog cannot be read
+	 */
+	public static DSSCatalogIndex getIndex(String dssFilename, TimeSeriesSource hD) throws Exception {
+
+		File f = new File(dssFilename);
+		String key = f.getAbsolutePath();
+		long mtime = f.lastModified();
+
+		for (;;) {
+			FutureTask<DSSCatalogIndex> task = indexes.get(key);
+			if (task == null) {
+				FutureTask<DSSCatalogIndex> build = newBuild(f.getName(), hD, mtime);
+				task = indexes.putIfAbsent(key, build);
+				if (task == null) {
+					task = build;
+					task.run(); // On this thread, with the caller's handle
+				}
+			}
+			DSSCatalogIndex index;
+			try {
+				index = task.get();
+			} catch (ExecutionException e) {
+				indexes.remove(key, task); // Let the next call try again
+				Throwable cause = e.getCause();
+				throw (cause instanceof Exception) ? (Exception) cause : e;
+			}
+			if (index.lastModified == mtime)
+				return index;
+			indexes.remove(key, task); // File changed since; build again
+		}
+	}
+
+	private static FutureTask<DSSCatalogIndex> newBuild(final String name, final TimeSeriesSource hD,
+			final long mtime) {
+		return new FutureTask<DSSCatalogIndex>(new Callable<DSSCatalogIndex>() {
+			@Override
+			public DSSCatalogIndex call() throws Exception {
+				long t0 = System.nanoTime();
+				List<String> pathnames = hD.getPathnameList();
+				DSSCatalogIndex index = new DSSCatalogIndex(pathnames, mtime);
+				PipelineMetrics.record(PipelineMetrics.Stage.CATALOG, t0, index.size, 0);
+				log.debug("Indexed " + index.size + " records in " + name);
+				return index;
+			}
+		});
+	}
+
+	/**
+	 * Drops the cached index for a file, e.g. after it has been rewritten.
+	 *
+	 * @param dssFilename
+	 *            name of HEC DSS file
+	 */
+	public static void invalidate(String dssFilename) {
+		indexes.remove(new File(dssFilename).getAbsolutePath());
+	}
+
+	DSSCatalogIndex(List<String> pathnames, long lastModified) {
+
+		this.lastModified = lastModified;
+
+		String a = "";
+		String fp = "";
+		int n = 0;
+		if (pathnames != null) {
+			for (String pathname : pathnames) {
+				String[] parts = pathname.split("/");
+				if (parts.length < 7)
+					continue;
+				for (int i = 1; i < 7; i++)
+					parts[i] = parts[i].intern();
+				String path = pathname.intern();
+				if (n == 0) {
+					a = parts[1];
+					fp = parts[6];
+				}
+				add(byBC, parts[2] + "/" + parts[3], path);
+				add(byBCF, parts[2] + "/" + parts[3] + "/" + parts[6], path);
+				n++;
+			}
+		}
+		this.aPart = a;
+		this.fPart = fp;
+		this.size = n;
+	}
+
+	private static void add(Map<String, List<String>> map, String key, String path) {
+		List<String> list = map.get(key);
+		if (list == null) {
+			list = new ArrayList<String>(1);
+			map.put(key, list);
+		}
+		list.add(path);
+	}
+
+	/**
+	 * @return A-part of the first record in the file (assumed constant
+	 *         throughout)
+	 */
+	public String getAPart() {
+		return aPart;
+	}
+
+	/**
+	 * @return F-part of the first record in the file, used as the default
+	 *         F-part
+	 */
+	public String getFPart() {
+		return fPart;
+	}
+
+	/**
+	 * @return number of records in the file
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the pathnames of all records (one per D-part block) matching a B-
+	 * and C-part.
+	 *
+	 * @param bPart
+	 * @param cPart
+	 * @return pathnames in catalog order; empty if there are none
+	 */
+	public List<String> find(String bPart, String cPart) {
+		List<String> list = byBC.get(bPart + "/" + cPart);
+		return list == null ? Collections.<String> emptyList() : Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Gets the pathnames of all records (one per D-part block) matching a B-,
+	 * C- and F-part.
+	 *
+	 * @param bPart
+	 * @param cPart
+	 * @param fPart
+	 * @return pathnames in catalog order; empty if there are none
+	 */
+	public List<String> find(String bPart, String cPart, String fPart) {
+		List<String> list = byBCF.get(bPart + "/" + cPart + "/" + fPart);
+		return list == null ? Collections.<String> emptyList() : Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Checks whether a record exists for a B-, C- and F-part.
+	 *
+	 * @param bPart
+	 * @param cPart
+	 * @param fPart
+	 * @return true if at least one record matches
+	 */
+	public boolean contains(String bPart, String cPart, String fPart) {
+		return byBCF.containsKey(bPart + "/" + cPart + "/" + fPart);
+	}
+}
@@ -1,21 +1,31 @@
 package pm;
 
+import java.awt.GraphicsEnvironment;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Iterator;
-import java.util.Scanner;
-import java.util.Vector;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JList;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 import org.apache.log4j.Logger;
 
 import gov.ca.water.calgui.bo.RBListItemBO;
-import hec.heclib.dss.HecDss;
 import hec.heclib.util.HecTime;
 import hec.io.TimeSeriesContainer;
 
@@ -40,12 +50,34 @@ import hec.io.TimeSeriesContainer;
  * <li>getSecondarySeries</li>
  * <li>Other calculations</li>
  * </ul>
+ * For reading many datasets at once without setting location and date range
+ * for each, use getSeries.
  */
 public class DSSGrabber1 {
 
 	static Logger log = Logger.getLogger(DSSGrabber1.class.getName());
 	static final double CFS_2_TAF_DAY = 0.001983471;
 	static final double TAF_DAY_2_CFS = 504.166667;
+	static final String MONTHLY = "1MON"; // E-part of the records read
+
+	// Total values below which exceedance series are sorted on the calling
+	// thread rather than across cores
+
+	static int exceedanceParallelThreshold = Integer.getInteger("pm.exceedance.parallelThreshold", 50000);
+
+	// Shared, bounded pool for reading scenario files in parallel
+
+	static final ExecutorService scenarioExecutor = Executors.newFixedThreadPool(
+			Math.min(8, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+				private int count = 0;
+
+				@Override
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "DSSGrabber scenario reader " + (++count));
+					t.setDaemon(true);
+					return t;
+				}
+			});
 
 	protected final JList<?> lstScenarios;
 
@@ -67,6 +99,7 @@ public class DSSGrabber1 {
 	protected int endWY;
 
 	protected int scenarios; // Number of scenarios passed in list parameter
+	protected List<String> lastErrors = new ArrayList<String>(); // From last read
 	protected double[][] annualTAFs;
 	protected double[][] annualTAFsDiff;
 	protected double[][] annualCFSs;
@@ -104,21 +137,11 @@ public class DSSGrabber1 {
 	public void setDateRange(String dateRange) {
 
 		try {
-			HecTime ht = new HecTime();
-
-			int m = ResultUtils.getXMLParsingSvcImplInstance(null).monthToInt(dateRange.substring(0, 3));
-			int y = new Integer(dateRange.substring(3, 7));
-			ht.setYearMonthDay(m == 12 ? y + 1 : y, m == 12 ? 1 : m + 1, 1, 0);
-
-			startTime = ht.value();
-			startWY = (m < 10) ? y : y + 1; // Water year
-
-			m = ResultUtils.getXMLParsingSvcImplInstance(null).monthToInt(dateRange.substring(8, 11));
-			m = 9;
-			y = new Integer(dateRange.substring(11, 15));
-			ht.setYearMonthDay(m == 12 ? y + 1 : y, m == 12 ? 1 : m + 1, 1, 0);
-			endTime = ht.value();
-			endWY = ((m < 10) ? y : y + 1);
+			DateWindow window = DateWindow.parse(dateRange);
+			startTime = window.getStartTime();
+			endTime = window.getEndTime();
+			startWY = window.getStartWY();
+			endWY = window.getEndWY();
 		} catch (Exception e) {
 
 			startTime = -1;
@@ -178,52 +201,15 @@ public class DSSGrabber1 {
 	 */
 	public void setLocation(String locationName) {
 
-		// TODO: Combine lookup tables AND review use of complex names
-		locationName = locationName.trim();
-
-		if (locationName.startsWith("*")) {
-			// Handle power management locations
-
-			title = locationName;
-			primaryDSSName = locationName;
-			secondaryDSSName = "";
-			yLabel = "";
-			sLabel = "";
-
-		} else
-
-		if (locationName.startsWith("/")) {
-			// Handle names passed from WRIMS GUI
-			String parts[] = locationName.split("/");
-			title = locationName;
-			primaryDSSName = parts[2] + "/" + parts[3] + "/" + parts[6];
-			secondaryDSSName = "";
-			yLabel = "";
-			sLabel = "";
-		} else if (locationName.startsWith("SchVw")) {
-			// Schematic view uses Table5 in mainMenu; this should be combined
-			// with GUI_Links3 table
-			for (int i = 0; i < ResultUtils.getXMLParsingSvcImplInstance(null).getLookups5Length(); i++) {
-				if (locationName.toUpperCase()
-						.endsWith(ResultUtils.getXMLParsingSvcImplInstance(null).getLookups5(i, 0))) {
-					primaryDSSName = ResultUtils.getXMLParsingSvcImplInstance(null).getLookups5(i, 1);
-					secondaryDSSName = ResultUtils.getXMLParsingSvcImplInstance(null).getLookups5(i, 2);
-					yLabel = ResultUtils.getXMLParsingSvcImplInstance(null).getLookups5(i, 3);
-					title = ResultUtils.getXMLParsingSvcImplInstance(null).getLookups5(i, 4);
-					sLabel = ResultUtils.getXMLParsingSvcImplInstance(null).getLookups5(i, 5);
-				}
-			}
-		} else
-
-			for (int i = 0; i < ResultUtils.getXMLParsingSvcImplInstance(null).getLookupsLength(); i++) {
-				if (locationName.endsWith(ResultUtils.getXMLParsingSvcImplInstance(null).getLookups(i, 0))) {
-					primaryDSSName = ResultUtils.getXMLParsingSvcImplInstance(null).getLookups(i, 1);
-					secondaryDSSName = ResultUtils.getXMLParsingSvcImplInstance(null).getLookups(i, 2);
-					yLabel = ResultUtils.getXMLParsingSvcImplInstance(null).getLookups(i, 3);
-					title = ResultUtils.getXMLParsingSvcImplInstance(null).getLookups(i, 4);
-					sLabel = ResultUtils.getXMLParsingSvcImplInstance(null).getLookups(i, 5);
-				}
-			}
+		// Lookup tables are compiled into LocationIndex on first use
+		LocationIndex.Location location = LocationIndex.resolve(locationName);
+		if (location != null) {
+			primaryDSSName = location.getPrimaryDSSName();
+			secondaryDSSName = location.getSecondaryDSSName();
+			yLabel = location.getYLabel();
+			title = location.getTitle();
+			sLabel = location.getSLabel();
+		}
 	}
 
 	public class Prefix {
@@ -308,299 +294,599 @@ public class DSSGrabber1 {
 	}
 
 	/**
-	 * Determines if the cls (CalLite scenario) file associated with a given
-	 * DV.DSS file shows dynamic SJR on
+	 * Reads a specified dataset from a specified HEC DSS file.
 	 *
-	 * @param dvFilename
-	 * @return true if .cls shows dynamic SJR on, false otherwise
+	 * @param dssFilename
+	 *            name of HEC DSS file from which to read results
+	 * @param dssName
+	 *            name(s) of dataset(s) to read from HEC DSS file. Multiple
+	 *            dataset names can be specified - separated by "+"; the dataset
+	 *            results will be read and summed. if the first data set has the
+	 *            suffix (-1), the results read will be shifted one month
+	 *            earlier.
+	 * @return HEC TimeSeriesContainer with times, values, number of values, and
+	 *         file name.
 	 */
-	private boolean clsIsDynamicSJR(String dvFilename) {
-		String clsFileName = dvFilename.substring(0, dvFilename.length() - 7) + ".cls";
-		File clsF = new File(clsFileName);
-		String sjrState = "";
-		try {
-			Scanner scanner;
-			scanner = new Scanner(new FileInputStream(clsF.getAbsolutePath()));
-			while (scanner.hasNextLine() && sjrState.equals("")) {
-				String text = scanner.nextLine();
-				if (text.startsWith("Dynamic_SJR|")) {
-
-					String[] texts = text.split("[|]");
-					sjrState = texts[1];
-				}
-			}
-			scanner.close();
-
-		} catch (IOException e) {
-			log.info(clsF.getName() + " not openable - SJR assumed static");
-		}
+	protected TimeSeriesContainer getOneSeries(String dssFilename, String dssName) {
 
-		return (sjrState.equals("true"));
+		return getOneSeries(dssFilename, dssName, startTime, endTime);
 	}
 
 	/**
-	 * Determines if the cls (CalLite scenario) file associated with a given
-	 * DV.DSS file shows D1485 Fish and Wildlife (Antioch+Chipps) on
+	 * Reads a specified dataset from a specified HEC DSS file and trims it to
+	 * an explicit date range. Does not use or change the grabber's state.
 	 *
-	 * @param dvFilename
-	 * @return true if .cls shows Antioch/Chipps on, false otherwise
+	 * @param dssFilename
+	 *            name of HEC DSS file from which to read results
+	 * @param dssName
+	 *            name(s) of dataset(s) to read, as for getOneSeries(String,
+	 *            String)
+	 * @param startTime
+	 *            start of date range (HEC time)
+	 * @param endTime
+	 *            end of date range (HEC time)
+	 * @return HEC TimeSeriesContainer with times, values, number of values, and
+	 *         file name.
 	 */
-	// Logic to display error message if a user is trying access Antioch/Chipps
-	// quick results and the selected scenario was not run
-	// with Antioch/Chipps
-	private boolean clsAntiochChipps(String dvFilename) {
-		String clsFileName = dvFilename.substring(0, dvFilename.length() - 7) + ".cls";
-		File clsF = new File(clsFileName);
-		String AN_CHstate = "";
-		try {
-			Scanner scanner;
-			scanner = new Scanner(new FileInputStream(clsF.getAbsolutePath()));
-			while (scanner.hasNextLine() && AN_CHstate.equals("")) {
-				String text = scanner.nextLine();
-				if (text.startsWith("CkbReg_AN|")) {
-
-					String[] texts = text.split("[|]");
-					AN_CHstate = texts[1];
-				}
-			}
-			scanner.close();
+	protected TimeSeriesContainer getOneSeries(String dssFilename, String dssName, int startTime, int endTime) {
 
-		} catch (IOException e) {
-			log.info(clsF.getName() + " not openable - Antioch/Chipps assumed off");
-		}
-
-		return (AN_CHstate.equals("true"));
+		return getOneSeries(dssFilename, dssName, startTime, endTime, null);
 	}
 
-	// Logic to display error message if a user is trying access LVE quick
-	// results and the selected scenario was not run with LVE RH
-	// 10/2/2014
 	/**
-	 * Determines if the cls (CalLite scenario) file associated with a given
-	 * DV.DSS file shows Los Vaqueros Enlargement on
+	 * Reads a specified dataset as getOneSeries(String, String, int, int), but
+	 * collects messages about missing records instead of showing them.
 	 *
-	 * @param dvFilename
-	 * @return true if .cls shows Antioch/Chipps on, false otherwise
+	 * @param errors
+	 *            list to which messages are added; if null, each message is
+	 *            shown in a dialog as it occurs
 	 */
-	private boolean clsLVE(String dvFilename) {
-		String clsFileName = dvFilename.substring(0, dvFilename.length() - 7) + ".cls";
-		File clsF = new File(clsFileName);
-		String LVE_State = "";
+	protected TimeSeriesContainer getOneSeries(String dssFilename, String dssName, int startTime, int endTime,
+			List<String> errors) {
+
+		// Repeat reads are served from memory, then from the on-disk cache of
+		// decoded records, if enabled; either way the record is only copied
+		// when it is trimmed
+
+		TimeSeriesContainer cached = getCachedRecord(dssFilename, dssName);
+		if (cached != null)
+			return trimSeries(cached, dssFilename, dssName, startTime, endTime);
+
+		TimeSeriesSource hD = null;
 		try {
-			Scanner scanner;
-			scanner = new Scanner(new FileInputStream(clsF.getAbsolutePath()));
-			while (scanner.hasNextLine() && LVE_State.equals("")) {
-				String text = scanner.nextLine();
-				if (text.startsWith("fac_ckb3|")) {
-
-					String[] texts = text.split("[|]");
-					LVE_State = texts[1];
-				}
+			hD = HecDssPool.getInstance().acquire(dssFilename);
+		} catch (Exception e) {
+			log.debug("Unable to access HEC-DSS file " + dssFilename + ": " + e.getMessage());
+			return null;
+		}
+		try {
+
+			// A source handle is not thread-safe; reads of one file are
+			// serialized while different files are read concurrently
+
+			synchronized (hD) {
+				return readOneSeries(hD, dssFilename, dssName, startTime, endTime, errors);
 			}
-			scanner.close();
+		} finally {
+
+			// Hand the file back to the pool; it stays open for the next read
+
+			HecDssPool.getInstance().release(dssFilename);
+		}
+	}
 
-		} catch (IOException e) {
-			log.info(clsF.getName() + " not openable - LVE assumed off");
+	/**
+	 * @return untrimmed record from the memory cache or, failing that, the
+	 *         on-disk cache (which then also goes into memory); null if
+	 *         neither has it. The record must not be changed.
+	 */
+	private static TimeSeriesContainer getCachedRecord(String dssFilename, String dssName) {
+		TimeSeriesContainer record = SeriesCache.getInstance().get(dssFilename, dssName);
+		if (record == null) {
+			record = DiskSeriesCache.getInstance().get(dssFilename, dssName);
+			SeriesCache.getInstance().put(dssFilename, dssName, record);
 		}
+		return record;
+	}
 
-		return (LVE_State.equals("true"));
+	/**
+	 * Reads one dataset through an already open handle and caches it untrimmed.
+	 * See getOneSeries(String, String, int, int). A sum with missing terms is
+	 * not cached, so that they are reported again on the next read.
+	 */
+	private TimeSeriesContainer readOneSeries(TimeSeriesSource hD, String dssFilename, String dssName, int startTime,
+			int endTime, List<String> errors) {
+
+		List<String> missing = new ArrayList<String>();
+		TimeSeriesContainer result = decodeOneSeries(hD, dssFilename, dssName, errors, missing);
+		if (missing.isEmpty()) {
+			DiskSeriesCache.getInstance().put(dssFilename, dssName, result);
+			SeriesCache.getInstance().put(dssFilename, dssName, result);
+		}
+		return trimSeries(result, dssFilename, dssName, startTime, endTime);
 	}
 
 	/**
-	 * Reads a specified dataset from a specified HEC DSS file.
+	 * Reads one dataset (combining multiple datasets where the name is an
+	 * expression - see PathExpression) through an already open handle, without
+	 * trimming to the date range.
 	 *
-	 * @param dssFilename
-	 *            name of HEC DSS file from which to read results
-	 * @param dssName
-	 *            name(s) of dataset(s) to read from HEC DSS file. Multiple
-	 *            dataset names can be specified - separated by "+"; the dataset
-	 *            results will be read and summed. if the first data set has the
-	 *            suffix (-1), the results read will be shifted one month
-	 *            earlier.
-	 * @return HEC TimeSeriesContainer with times, values, number of values, and
-	 *         file name.
+	 * @param missing
+	 *            receives the names of terms of an expression that could not
+	 *            be read, and were left out of the result
 	 */
-	protected TimeSeriesContainer getOneSeries(String dssFilename, String dssName) {
+	private TimeSeriesContainer decodeOneSeries(TimeSeriesSource hD, String dssFilename, String dssName,
+			List<String> errors, List<String> missing) {
 
-		HecDss hD;
 		TimeSeriesContainer result = null;
 
 		try {
 
-			boolean doTimeShift = false;
 			String[] dssNames;
-			String[] dssNames1;
-			String hecAPart = "";
-			String hecFPart = "";
-			String[] hecFParts = null;
+			PathExpression expr = null;
+			String[] pathnames = null;
 
-			hD = HecDss.open(dssFilename);
 			if (dssName.startsWith("*")) {
 
-				result = (TimeSeriesContainer) hD.get(dssName.substring(1), true);
+				long t0 = System.nanoTime();
+				result = hD.get(dssName.substring(1), true);
+				recordRead(t0, result);
 				dssNames = new String[1];
 				dssNames[0] = dssName;
 			} else {
 				// Determine A-part and F-part directly from file - 10/4/2011 -
-				// assumes constant throughout
-
-				@SuppressWarnings("unchecked")
-				// TODO: is it better to write code that does not require
-				// suppresswarnings?
+				// assumes constant throughout. The catalog is indexed once per
+				// file and shared across reads.
 
-				Vector<String> aList = hD.getPathnameList();
-				Iterator<String> it = aList.iterator();
-				String aPath = it.next();
-				String[] temp = aPath.split("/");
-				hecAPart = temp[1];
-				hecFPart = temp[6] + "/";
+				DSSCatalogIndex index = DSSCatalogIndex.getIndex(dssFilename, hD);
 
-				String delims = "[+]";
-				dssNames1 = dssName.split(delims);
+				// Sums, differences, scale factors and time shifts are parsed
+				// once per name
 
-				// Check for time shift (-1 at end of name)
-
-				if (dssNames1[0].endsWith("(-1)")) {
-					doTimeShift = true;
-					dssNames1[0] = dssNames1[0].substring(0, dssNames1[0].length() - 4);
-				}
+				expr = PathExpression.compile(dssName);
 
 				// Assign F-Part for each DSS - use default if not specified,
 				// otherwise last part in supplied name.
 
-				dssNames = new String[dssNames1.length];
-				hecFParts = new String[dssNames1.length];
-				for (int i = 0; i < dssNames1.length; i++) {
-					String[] nameParts = dssNames1[i].split("/");
-					dssNames[i] = nameParts[0] + "/" + nameParts[1];
-					if (nameParts.length == 2)
-						hecFParts[i] = hecFPart;
-					else
-						// TODO: Use nameParts UNLESS it's "LOOKUP", in which
-						// case
-						// we should look up the value by matching B and C
-						// partstep
-						hecFParts[i] = nameParts[nameParts.length - 1] + "/";
+				dssNames = new String[expr.size()];
+				pathnames = new String[expr.size()];
+				for (int i = 0; i < expr.size(); i++) {
+					String[] parts = termParts(expr.getTerms().get(i), index);
+					dssNames[i] = parts[0] + "/" + parts[1];
+					pathnames[i] = resolvePathname(index, parts[0], parts[1], parts[2]);
 				}
 
-				// TODO: Note hard-coded D- and E-PART
-				result = (TimeSeriesContainer) hD
-						.get("/" + hecAPart + "/" + dssNames[0] + "/01JAN1930/1MON/" + hecFParts[0], true);
+				long t0 = System.nanoTime();
+				result = hD.get(pathnames[0], true);
+				recordRead(t0, result);
 
 			}
 			if ((result == null) || (result.numberValues < 1)) {
 
-				if (!clsIsDynamicSJR(dssFilename) && ((dssNames[0].equals("S_MELON/STORAGE"))
-						|| (dssNames[0].equals("S_PEDRO/STORAGE")) || (dssNames[0].equals("S_MCLRE/STORAGE"))
-						|| (dssNames[0].equals("S_MLRTN/STORAGE")) || (dssNames[0].equals("C_STANRIPN/FLOW-CHANNEL"))
-						|| (dssNames[0].equals("C_TUOL/FLOW-CHANNEL")) || (dssNames[0].equals("C_MERCED2/FLOW-CHANNEL"))
-						|| (dssNames[0].equals("C_SJRMS/FLOW-CHANNEL"))
-						|| (dssNames[0].equals("D_STANRIPN/FLOW-DELIVERY"))
-						|| (dssNames[0].equals("D_STANGDWN/FLOW-DELIVERY"))
-						|| (dssNames[0].equals("D_TUOL/FLOW-DELIVERY"))
-						|| (dssNames[0].equals("D_TUOL1B/FLOW-DELIVERY"))
-						|| (dssNames[0].equals("D_TUOL2/FLOW-DELIVERY"))
-						|| (dssNames[0].equals("D_MERCED1/FLOW-DELIVERY"))
-						|| (dssNames[0].equals("D_MERCED2/FLOW-DELIVERY"))
-						|| (dssNames[0].equals("D_MDRCNL/FLOW-DELIVERY"))
-						|| (dssNames[0].equals("D_FKCNL/FLOW-DELIVERY")))) {
+				// Explain variables that exist only if the scenario was run
+				// with an option it was run without
 
+				String reason = ScenarioMetadata.forDvFile(dssFilename).missingReason(dssNames[0]);
+				if (reason != null) {
 					result = null;
-					JOptionPane.showMessageDialog(null,
-							" Could not find " + dssNames[0] + " in " + dssFilename
-									+ ".\n The selected scenario was not run using dynamic SJR simulation.",
-							"Error", JOptionPane.ERROR_MESSAGE);
+					reportMissing(" Could not find " + dssNames[0] + " in " + dssFilename + ".\n " + reason, errors);
+				} else
+					reportMissing("Could not find " + dssNames[0] + " in " + dssFilename, errors);
+
+			} else if ((expr != null) && !expr.isSimple()) {
+
+				// If no error, read the other datasets in the expression and
+				// combine them in one pass
+
+				TimeSeriesContainer[] records = new TimeSeriesContainer[expr.size()];
+				records[0] = result;
+				for (int i = 1; i < expr.size(); i++) {
+					long t0 = System.nanoTime();
+					records[i] = hD.get(pathnames[i], true);
+					recordRead(t0, records[i]);
+					if ((records[i] == null) || (records[i].numberValues < 1)) {
+						records[i] = null;
+						missing.add(dssNames[i]);
+						reportMissing("Could not find " + dssNames[i] + " in " + dssFilename, errors);
+					}
 				}
+				long t0 = System.nanoTime();
+				result = expr.evaluate(records);
+				PipelineMetrics.record(PipelineMetrics.Stage.SUM, t0, (long) expr.size() * result.numberValues);
+			}
 
-				else if (!clsAntiochChipps(dssFilename)
-						&& ((dssNames[0].equals("AN_EC_STD/SALINITY")) || (dssNames[0].equals("CH_EC_STD/SALINITY")))) {
+		} catch (Exception e) {
 
-					result = null;
-					JOptionPane.showMessageDialog(null,
-							" Could not find " + dssNames[0] + " in " + dssFilename
-									+ ".\n The selected scenario was not run with D-1485 Fish and Wildlife (at Antioch and Chipps) regulations.",
-							"Error", JOptionPane.ERROR_MESSAGE);
-				}
+			log.debug(e.getMessage());
 
-				else if (!clsLVE(dssFilename) && ((dssNames[0].equals("S422/STORAGE"))
-						|| (dssNames[0].equals("WQ408_OR_/SALINITY")) || (dssNames[0].equals("WQ408_VC_/SALINITY"))
-						|| (dssNames[0].equals("WQ408_RS_/SALINITY"))
-						|| (dssNames[0].equals("C422_FILL_CC/FLOW-CHANNEL"))
-						|| (dssNames[0].equals("D420/FLOW-DELIVERY")) || (dssNames[0].equals("D408_OR/FLOW-DELIVERY"))
-						|| (dssNames[0].equals("D408_VC/FLOW-DELIVERY"))
-						|| (dssNames[0].equals("D408_RS/FLOW-DELIVERY")) || (dssNames[0].equals("WQ420/SALINITY")))) {
+		}
 
-					result = null;
-					JOptionPane.showMessageDialog(null,
-							" Could not find " + dssNames[0] + " in " + dssFilename
-									+ ".\n The selected scenario was not run with Los Vaqueros Enlargement.",
-							"Error", JOptionPane.ERROR_MESSAGE);
-				}
+		return result;
+	}
 
-				else {
-					JOptionPane.showMessageDialog(null, "Could not find " + dssNames[0] + " in " + dssFilename, "Error",
-							JOptionPane.ERROR_MESSAGE);
-				}
+	/**
+	 * Gets the B-, C- and F-part for a term of a dataset name expression. The
+	 * F-part is the file's default if not specified, otherwise the last part
+	 * in the supplied name.
+	 */
+	private static String[] termParts(PathExpression.Term term, DSSCatalogIndex index) {
+		String[] nameParts = term.getName().split("/");
+		String fPart;
+		if (nameParts.length == 2)
+			fPart = index.getFPart();
+		else
+			// TODO: Use nameParts UNLESS it's "LOOKUP", in which case
+			// we should look up the value by matching B and C
+			// partstep
+			fPart = nameParts[nameParts.length - 1];
+		return new String[] { nameParts[0], nameParts[1], fPart };
+	}
 
-			} else {
+	/**
+	 * Finds the pathname of a monthly record in the catalog, so that its
+	 * D-part need not be known. Records at other intervals with the same B-,
+	 * C- and F-part are passed over, since everything downstream expects
+	 * monthly values. Falls back to the monthly record starting 1930 if the
+	 * catalog lists no monthly record.
+	 */
+	private static String resolvePathname(DSSCatalogIndex index, String bPart, String cPart, String fPart) {
+		for (String pathname : index.find(bPart, cPart, fPart)) {
+			String[] parts = pathname.split("/");
+			if ((parts.length > 5) && MONTHLY.equalsIgnoreCase(parts[5]))
+				return pathname;
+		}
+		return "/" + index.getAPart() + "/" + bPart + "/" + cPart + "/01JAN1930/" + MONTHLY + "/" + fPart + "/";
+	}
 
-				// If no error, add results from other datasets in dssNames
-				// array.
+	private static void recordRead(long t0, TimeSeriesContainer tsc) {
+		int n = (tsc == null) ? 0 : tsc.numberValues;
+		PipelineMetrics.record(PipelineMetrics.Stage.READ, t0, n, 12L * n);
+	}
 
-				for (int i = 1; i < dssNames.length; i++) {
-					// TODO: Note hard-coded D- and E-PART
-					TimeSeriesContainer result2 = (TimeSeriesContainer) hD
-							.get("/" + hecAPart + "/" + dssNames[i] + "/01JAN2020/1MON/" + hecFParts[i], true);
-					if (result2 == null) {
-						JOptionPane.showMessageDialog(null, "Could not find " + dssNames[0] + " in " + dssFilename,
-								"Error", JOptionPane.ERROR_MESSAGE);
-					} else {
-						for (int j = 0; j < result2.numberValues; j++)
-							result.values[j] = result.values[j] + result2.values[j];
-					}
-				}
-			}
+	/**
+	 * Trims a series read by decodeOneSeries to a date range. The series passed
+	 * in is not changed; the result has arrays of exactly numberValues entries.
+	 * This is the one copy made of a record on its way to a caller, who may
+	 * change it.
+	 */
+	private TimeSeriesContainer trimSeries(TimeSeriesContainer result, String dssFilename, String dssName,
+			int startTime, int endTime) {
+
+		if (result == null)
+			return null;
+
+		long t0 = System.nanoTime();
+		SeriesView view = SeriesView.of(result).window(startTime, endTime);
+		TimeSeriesContainer trimmed = view.toContainer(result);
+		PipelineMetrics.record(PipelineMetrics.Stage.TRIM, t0, trimmed.numberValues);
+
+		// Store name portion of DSS file in TimeSeriesContainer
+
+		trimmed.fileName = new File(dssFilename).getName();
+		return trimmed;
+	}
+
+	/**
+	 * Shows a message about a missing record right away (or only logs it when
+	 * running headless), or adds it to a list for later display.
+	 */
+	private void reportMissing(String message, List<String> errors) {
+		if (errors != null)
+			errors.add(message);
+		else if (GraphicsEnvironment.isHeadless())
+			log.info(message.trim());
+		else
+			JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Shows collected messages in a single dialog (on the event dispatch
+	 * thread), or only logs them when running headless.
+	 *
+	 * @param errors
+	 *            messages collected while reading
+	 */
+	protected void showErrors(List<String> errors) {
 
-			// Trim to date range
+		if (errors.isEmpty())
+			return;
 
-			int first = 0; // Find starting index
-			for (int i = 0; (i < result.numberValues) && (result.times[i] < startTime); i++)
-				first = i + 1;
+		final StringBuilder sb = new StringBuilder();
+		for (String error : errors) {
+			log.info(error.trim());
+			sb.append(error.trim()).append("\n");
+		}
+		if (GraphicsEnvironment.isHeadless())
+			return;
 
-			int last = result.numberValues - 1; // find ending index
-			for (int i = result.numberValues - 1; (i >= 0) && (result.times[i] > endTime); i--)
-				last = i;
+		Runnable show = new Runnable() {
+			@Override
+			public void run() {
+				JOptionPane.showMessageDialog(null, sb.toString(), "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		};
+		if (SwingUtilities.isEventDispatchThread())
+			show.run();
+		else
+			SwingUtilities.invokeLater(show);
+	}
+
+	/**
+	 * Gets the messages about missing records collected by the most recent
+	 * getPrimarySeries or getSecondarySeries read.
+	 *
+	 * @return list of messages; empty if all records were found
+	 */
+	public List<String> getLastErrors() {
+		return lastErrors;
+	}
 
-			if (first != 0) // Shift results in array to start
-				for (int i = 0; i <= (last - first); i++) { // TODO: Think
-															// through change to
-															// <= done 11/9
-					result.times[i] = result.times[i + first];
-					result.values[i] = result.values[i + first];
+	/**
+	 * Reads one dataset from each of a list of scenario files in parallel, one
+	 * task per file. Results are returned in the order of the files; messages
+	 * about missing records are collected and shown once at the end.
+	 *
+	 * @param files
+	 *            scenario DSS files, base first
+	 * @param dssName
+	 *            name of dataset to read from each file
+	 * @return array of HEC TimeSeriesContainer - one per file
+	 */
+	private TimeSeriesContainer[] readScenarios(List<String> files, final String dssName) {
+
+		final int start = startTime;
+		final int end = endTime;
+		List<Future<TimeSeriesContainer>> futures = new ArrayList<Future<TimeSeriesContainer>>();
+		List<List<String>> errorLists = new ArrayList<List<String>>();
+
+		for (final String file : files) {
+			final List<String> errors = new ArrayList<String>();
+			errorLists.add(errors);
+			futures.add(scenarioExecutor.submit(new Callable<TimeSeriesContainer>() {
+				@Override
+				public TimeSeriesContainer call() {
+					return getOneSeries(file, dssName, start, end, errors);
 				}
+			}));
+		}
+
+		TimeSeriesContainer[] results = new TimeSeriesContainer[files.size()];
+		List<String> allErrors = new ArrayList<String>();
+		for (int i = 0; i < results.length; i++) {
+			try {
+				results[i] = futures.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				allErrors.add("Interrupted while reading " + files.get(i));
+			} catch (ExecutionException e) {
+				log.debug(e.getCause());
+				allErrors.add("Unable to read " + dssName + " from " + files.get(i));
+			}
+			allErrors.addAll(errorLists.get(i));
+		}
 
-			result.numberValues = last - first + 1; // Adjust count of results
+		lastErrors = allErrors;
+		showErrors(allErrors);
+		return results;
+	}
 
-			// Do time shift where indicated (when a dataset has suffix "(-1)"
+	/**
+	 * Reads a batch of datasets for a set of scenarios in one call. Unlike
+	 * getPrimarySeries, this does not use or change the grabber's base,
+	 * location or date range, so it can be called for a whole station x
+	 * parameter grid at once. Each scenario file is opened once and read on its
+	 * own thread, with records read in pathname order.
+	 *
+	 * @param dssNames
+	 *            names of datasets to read, in any form accepted by
+	 *            getOneSeries
+	 * @param dateRange
+	 *            string describing the date range in format mmmyyyy-mmmyyyy
+	 * @param scenarioFiles
+	 *            DSS files to read from, base first
+	 * @return array [dataset][scenario] of HEC TimeSeriesContainer; entries are
+	 *         null where a dataset could not be read. Null if the calling
+	 *         thread was interrupted before all files were read.
+	 */
+	public TimeSeriesContainer[][] getSeries(List<String> dssNames, String dateRange, List<String> scenarioFiles) {
+
+		List<String> errors = new ArrayList<String>();
+		TimeSeriesContainer[][] results = getSeries(dssNames, dateRange, scenarioFiles, errors);
+		if (results != null)
+			showErrors(errors);
+		return results;
+	}
 
-			if (doTimeShift) {
-				for (int i = result.numberValues; i < result.numberValues - 1; i++)
-					result.times[i] = result.times[i + 1];
-				result.numberValues = result.numberValues - 1;
+	/**
+	 * Reads a batch of datasets for a set of scenarios as getSeries does, but
+	 * collects messages about missing records and failed reads in the
+	 * caller's list instead of showing them.
+	 *
+	 * @param dssNames
+	 *            names of datasets to read, in any form accepted by
+	 *            getOneSeries
+	 * @param dateRange
+	 *            string describing the date range in format mmmyyyy-mmmyyyy
+	 * @param scenarioFiles
+	 *            DSS files to read from, base first
+	 * @param errors
+	 *            receives messages about records and files that could not be
+	 *            read
+	 * @return array [dataset][scenario] of HEC TimeSeriesContainer; entries are
+	 *         null where a dataset could not be read. Null if the calling
+	 *         thread was interrupted before all files were read; the reads
+	 *         still running are cancelled.
+	 */
+	public TimeSeriesContainer[][] getSeries(List<String> dssNames, String dateRange, List<String> scenarioFiles,
+			List<String> errors) {
+
+		DateWindow window = DateWindow.parse(dateRange);
+		TimeSeriesContainer[][] results = new TimeSeriesContainer[dssNames.size()][scenarioFiles.size()];
+
+		// Visit records in pathname order so that reads move through each
+		// file block by block
+
+		final Integer[] order = new Integer[dssNames.size()];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		final List<String> names = dssNames;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return names.get(i1).compareTo(names.get(i2));
+			}
+		});
+
+		// One task per scenario file
+
+		final TimeSeriesContainer[][] batch = results;
+		final int start = window.getStartTime();
+		final int end = window.getEndTime();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		final List<String> taskErrors = Collections.synchronizedList(new ArrayList<String>());
+		for (int j = 0; j < scenarioFiles.size(); j++) {
+			final int scenario = j;
+			final String dssFilename = scenarioFiles.get(j);
+			futures.add(scenarioExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+
+					// Serve what we can from the cache; read the rest
+
+					List<Integer> misses = new ArrayList<Integer>();
+					for (int i : order) {
+						TimeSeriesContainer record = getCachedRecord(dssFilename, names.get(i));
+						if (record == null)
+							misses.add(i);
+						else
+							batch[i][scenario] = trimSeries(record, dssFilename, names.get(i), start, end);
+					}
+					if (misses.isEmpty())
+						return;
+
+					TimeSeriesSource hD;
+					try {
+						hD = HecDssPool.getInstance().acquire(dssFilename);
+					} catch (Exception e) {
+						taskErrors.add("Unable to access HEC-DSS file " + dssFilename);
+						return;
+					}
+					try {
+						synchronized (hD) {
+							for (int i : misses) {
+								if (Thread.currentThread().isInterrupted())
+									return; // Cancelled
+								batch[i][scenario] = readOneSeries(hD, dssFilename, names.get(i), start, end,
+										taskErrors);
+							}
+						}
+					} finally {
+						HecDssPool.getInstance().release(dssFilename);
+					}
+				}
+			}));
+		}
+		for (int j = 0; j < futures.size(); j++) {
+			try {
+				futures.get(j).get();
+			} catch (InterruptedException e) {
+				for (Future<?> future : futures)
+					future.cancel(true);
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (ExecutionException e) {
+				log.error("Unable to read " + scenarioFiles.get(j), e.getCause());
+				taskErrors.add("Unable to read HEC-DSS file " + scenarioFiles.get(j) + ": " + e.getCause());
 			}
+		}
 
-		} catch (Exception e) {
+		errors.addAll(taskErrors);
+		return results;
+	}
 
-			log.debug(e.getMessage());
+	/**
+	 * Streams a whole record into an aggregator, one DSS block (a decade for
+	 * monthly data) at a time, so that records of any length can be
+	 * aggregated without holding the full series in memory. The date range is
+	 * not applied. Names may be sums, differences and scaled terms as for
+	 * getOneSeries, but not time shifts.
+	 *
+	 * @param dssFilename
+	 *            name of HEC DSS file
+	 * @param dssName
+	 *            name of dataset, in any form accepted by getOneSeries
+	 * @param aggregator
+	 *            receives the blocks in time order; finish() is called at
+	 *            the end
+	 * @return true if any data were read
+	 */
+	public boolean streamSeries(String dssFilename, String dssName, StreamingAggregator aggregator) {
 
+		TimeSeriesSource hD;
+		try {
+			hD = HecDssPool.getInstance().acquire(dssFilename);
+		} catch (Exception e) {
+			log.debug("Unable to access HEC-DSS file " + dssFilename + ": " + e.getMessage());
+			return false;
 		}
+		try {
+			DSSCatalogIndex index;
+			synchronized (hD) {
+				index = DSSCatalogIndex.getIndex(dssFilename, hD);
+			}
 
-		// Store name portion of DSS file in TimeSeriesContainer
+			// Block pathnames for each term, keyed and ordered by D-part
 
-		String shortFileName = new File(dssFilename).getName();
-		result.fileName = shortFileName;
+			PathExpression expr = null;
+			List<Map<Integer, String>> blocks = new ArrayList<Map<Integer, String>>();
+			if (dssName.startsWith("*")) {
+				String[] parts = dssName.substring(1).split("/");
+				blocks.add(blocksByDate(index.find(parts[2], parts[3], parts[6])));
+			} else {
+				expr = PathExpression.compile(dssName);
+				for (PathExpression.Term term : expr.getTerms()) {
+					if (term.getShift() != 0)
+						throw new IllegalArgumentException("Time shifts cannot be streamed: " + dssName);
+					String[] parts = termParts(term, index);
+					blocks.add(blocksByDate(index.find(parts[0], parts[1], parts[2])));
+				}
+			}
+			if (blocks.get(0).isEmpty())
+				return false;
+
+			// Read block by block, holding the file only for each block so
+			// other readers can interleave
+
+			TimeSeriesContainer[] records = new TimeSeriesContainer[blocks.size()];
+			for (Map.Entry<Integer, String> block : blocks.get(0).entrySet()) {
+				synchronized (hD) {
+					for (int i = 0; i < records.length; i++) {
+						String pathname = (i == 0) ? block.getValue() : blocks.get(i).get(block.getKey());
+						long t0 = System.nanoTime();
+						records[i] = (pathname == null) ? null : hD.get(pathname, false);
+						recordRead(t0, records[i]);
+					}
+				}
+				if ((records[0] == null) || (records[0].numberValues < 1))
+					continue;
+				aggregator.add(((expr == null) || expr.isSimple()) ? records[0] : expr.evaluate(records));
+			}
+			aggregator.finish();
+			return true;
 
-		return result;
+		} catch (Exception e) {
+			log.debug("Unable to stream " + dssName + " from " + dssFilename + ": " + e.getMessage());
+			return false;
+		} finally {
+			HecDssPool.getInstance().release(dssFilename);
+		}
+	}
+
+	private static Map<Integer, String> blocksByDate(List<String> pathnames) {
+		Map<Integer, String> blocks = new TreeMap<Integer, String>();
+		for (String pathname : pathnames)
+			blocks.put(WaterYearCalendar.parseYearMonth(pathname.split("/")[4]), pathname);
+		return blocks;
 	}
 
 	protected String checkReadiness() {
@@ -654,14 +940,11 @@ public class DSSGrabber1 {
 				scenarios = lstScenarios.getModel().getSize();
 				results = new TimeSeriesContainer[scenarios];
 
-				// Base first
-
-				results[0] = getOneSeries(baseName, primaryDSSName);
-				originalUnits = results[0].units;
+				// Base first, then scenarios - read in parallel
 
-				// Then scenarios
+				List<String> files = new ArrayList<String>();
+				files.add(baseName);
 
-				int j = 0;
 				for (int i = 0; i < scenarios; i++) {
 					String scenarioName = "";
 					if (baseName.toUpperCase().contains("_SV.DSS")) {
@@ -688,11 +971,13 @@ public class DSSGrabber1 {
 						// scenarioName = ((RBListItem)
 						// lstScenarios.getModel().getElementAt(i)).toString();
 						scenarioName = (String) lstScenarios.getModel().getElementAt(i);
-					if (!baseName.equals(scenarioName)) {
-						j = j + 1;
-						results[j] = getOneSeries(scenarioName, primaryDSSName);
-					}
+					if (!baseName.equals(scenarioName))
+						files.add(scenarioName);
 				}
+
+				TimeSeriesContainer[] read = readScenarios(files, primaryDSSName);
+				System.arraycopy(read, 0, results, 0, read.length);
+				originalUnits = results[0].units;
 			}
 		}
 
@@ -713,23 +998,22 @@ public class DSSGrabber1 {
 			scenarios = lstScenarios.getModel().getSize();
 			TimeSeriesContainer[] results = new TimeSeriesContainer[scenarios];
 
-			// Base first
-
-			results[0] = getOneSeries(baseName, secondaryDSSName);
+			// Base first, then scenarios - read in parallel
 
-			// Then scenarios
+			List<String> files = new ArrayList<String>();
+			files.add(baseName);
 
-			int j = 0;
 			for (int i = 0; i < scenarios; i++) {
 				// String scenarioName = (String)
 				// lstScenarios.getModel().getElementAt(i);
 				String scenarioName = ((RBListItemBO) lstScenarios.getModel().getElementAt(i)).toString();
 
-				if (!baseName.equals(scenarioName)) {
-					j = j + 1;
-					results[j] = getOneSeries(scenarioName, secondaryDSSName);
-				}
+				if (!baseName.equals(scenarioName))
+					files.add(scenarioName);
 			}
+
+			TimeSeriesContainer[] read = readScenarios(files, secondaryDSSName);
+			System.arraycopy(read, 0, results, 0, read.length);
 			return results;
 		}
 	}
@@ -747,14 +1031,10 @@ public class DSSGrabber1 {
 	 */
 	public TimeSeriesContainer[] getDifferenceSeries(TimeSeriesContainer[] timeSeriesResults) {
 
-		TimeSeriesContainer[] results = new TimeSeriesContainer[scenarios - 1];
-		for (int i = 0; i < scenarios - 1; i++) {
+		// Aligned on time, so scenarios with different periods compare
+		// correctly
 
-			results[i] = (TimeSeriesContainer) timeSeriesResults[i + 1].clone();
-			for (int j = 0; j < results[i].numberValues; j++)
-				results[i].values[j] = results[i].values[j] - timeSeriesResults[0].values[j];
-		}
-		return results;
+		return DifferenceEngine.differences(timeSeriesResults, scenarios);
 	}
 
 	/**
@@ -782,24 +1062,10 @@ public class DSSGrabber1 {
 
 		if (originalUnits.equals("CFS")) {
 
-			HecTime ht = new HecTime();
-			Calendar calendar = Calendar.getInstance();
-
 			// Primary series
 
 			for (int i = 0; i < primaryResults.length; i++) {
-				for (int j = 0; j < primaryResults[i].numberValues; j++) {
-
-					ht.set(primaryResults[i].times[j]);
-					calendar.set(ht.year(), ht.month() - 1, 1);
-					double monthlyTAF = primaryResults[i].values[j] * calendar.getActualMaximum(Calendar.DAY_OF_MONTH)
-							* CFS_2_TAF_DAY;
-					int wy = ((ht.month() < 10) ? ht.year() : ht.year() + 1) - startWY;
-					if (wy >= 0)
-						annualTAFs[i][wy] += monthlyTAF;
-					if (!isCFS)
-						primaryResults[i].values[j] = monthlyTAF;
-				}
+				convertMonthly(primaryResults[i], CFS_2_TAF_DAY, annualTAFs[i], startWY, !isCFS);
 				if (!isCFS)
 					primaryResults[i].units = "TAF per year";
 			}
@@ -818,18 +1084,8 @@ public class DSSGrabber1 {
 				// Secondary series
 
 				for (int i = 0; i < secondaryResults.length; i++) {
-					for (int j = 0; j < secondaryResults[i].numberValues; j++) {
-
-						ht.set(secondaryResults[i].times[j]);
-						calendar.set(ht.year(), ht.month() - 1, 1);
-						double monthlyTAF = secondaryResults[i].values[j]
-								* calendar.getActualMaximum(Calendar.DAY_OF_MONTH) * CFS_2_TAF_DAY;
-						int wy = ((ht.month() < 10) ? ht.year() : ht.year() + 1) - startWY;
-						annualTAFs[i + primaryResults.length][wy] += monthlyTAF;
-						if (!isCFS)
-							secondaryResults[i].values[j] = monthlyTAF;
-
-					}
+					convertMonthly(secondaryResults[i], CFS_2_TAF_DAY, annualTAFs[i + primaryResults.length], startWY,
+							!isCFS);
 					if (!isCFS)
 						secondaryResults[i].units = "TAF per year";
 				}
@@ -857,6 +1113,42 @@ public class DSSGrabber1 {
 		return annualCFSsDiff[i][wy - startWY];
 	}
 
+	/**
+	 * Converts a monthly series between a rate and a monthly volume by
+	 * multiplying each value by the number of days in its month and a
+	 * per-day factor, and adds the volumes into annual totals by water year.
+	 *
+	 * @param tsc
+	 *            monthly series
+	 * @param factor
+	 *            conversion per day, e.g. CFS_2_TAF_DAY
+	 * @param annual
+	 *            annual totals, indexed by water year minus firstWY
+	 * @param firstWY
+	 *            water year of annual[0]
+	 * @param replace
+	 *            true to replace the series values with the converted values
+	 */
+	private static void convertMonthly(TimeSeriesContainer tsc, double factor, double[] annual, int firstWY,
+			boolean replace) {
+
+		long t0 = System.nanoTime();
+		int n = tsc.numberValues;
+		int[] times = tsc.times;
+		double[] values = tsc.values;
+
+		for (int j = 0; j < n; j++) {
+			int ym = WaterYearCalendar.yearMonth(times[j]);
+			double v = values[j] * WaterYearCalendar.daysInMonth(ym) * factor;
+			int wy = WaterYearCalendar.waterYear(ym) - firstWY;
+			if ((wy >= 0) && (wy < annual.length))
+				annual[wy] += v;
+			if (replace)
+				values[j] = v;
+		}
+		PipelineMetrics.record(PipelineMetrics.Stage.CONVERT, t0, n);
+	}
+
 	/**
 	 * Calculates annual volume in CFS for any TAF dataset, and replaces monthly
 	 * values if CFS flag is checked.
@@ -882,24 +1174,10 @@ public class DSSGrabber1 {
 
 		if (originalUnits.equals("TAF")) {
 
-			HecTime ht = new HecTime();
-			Calendar calendar = Calendar.getInstance();
-
 			// Primary series
 
 			for (int i = 0; i < primaryResults.length; i++) {
-				for (int j = 0; j < primaryResults[i].numberValues; j++) {
-
-					ht.set(primaryResults[i].times[j]);
-					calendar.set(ht.year(), ht.month() - 1, 1);
-					double monthlyCFS = primaryResults[i].values[j] * calendar.getActualMaximum(Calendar.DAY_OF_MONTH)
-							* TAF_DAY_2_CFS;
-					int wy = ((ht.month() < 10) ? ht.year() : ht.year() + 1) - startWY;
-					if (wy >= 0)
-						annualCFSs[i][wy] += monthlyCFS;
-					if (!isCFS)
-						primaryResults[i].values[j] = monthlyCFS;
-				}
+				convertMonthly(primaryResults[i], TAF_DAY_2_CFS, annualCFSs[i], startWY, !isCFS);
 				if (isCFS)
 					primaryResults[i].units = "cfs";
 			}
@@ -918,18 +1196,8 @@ public class DSSGrabber1 {
 				// Secondary series
 
 				for (int i = 0; i < secondaryResults.length; i++) {
-					for (int j = 0; j < secondaryResults[i].numberValues; j++) {
-
-						ht.set(secondaryResults[i].times[j]);
-						calendar.set(ht.year(), ht.month() - 1, 1);
-						double monthlyCFS = secondaryResults[i].values[j]
-								* calendar.getActualMaximum(Calendar.DAY_OF_MONTH) * TAF_DAY_2_CFS;
-						int wy = ((ht.month() < 10) ? ht.year() : ht.year() + 1) - startWY;
-						annualCFSs[i + primaryResults.length][wy] += monthlyCFS;
-						if (isCFS)
-							secondaryResults[i].values[j] = monthlyCFS;
-
-					}
+					convertMonthly(secondaryResults[i], TAF_DAY_2_CFS, annualCFSs[i + primaryResults.length], startWY,
+							isCFS);
 					if (isCFS)
 						secondaryResults[i].units = "cfs";
 				}
@@ -953,77 +1221,205 @@ public class DSSGrabber1 {
 		if (timeSeriesResults == null || timeSeriesResults[0].times == null)
 			results = null;
 		else {
-			results = new TimeSeriesContainer[14][scenarios];
 
-			for (int month = 0; month < 14; month++) {
+			int count = timeSeriesResults.length; // One per scenario
+			results = new TimeSeriesContainer[14][count];
 
-				HecTime ht = new HecTime();
-				for (int i = 0; i < scenarios; i++) {
+			// Split across cores when there is enough to sort; each scenario
+			// is two jobs (monthly and annual sets, and all values)
 
-					if (month == 13) {
-						results[month][i] = (TimeSeriesContainer) timeSeriesResults[i].clone();
-					} else {
+			long values = 0;
+			for (TimeSeriesContainer tsc : timeSeriesResults)
+				values += tsc.numberValues;
+			ExceedanceTask task = new ExceedanceTask(timeSeriesResults, results, 0, 2 * count);
+			if (values < exceedanceParallelThreshold)
+				task.compute();
+			else
+				ForkJoinPool.commonPool().invoke(task);
+		}
+		return results;
+	}
 
-						int n;
-						int times2[];
-						double values2[];
+	/**
+	 * Fills part of the getExceedanceSeries result grid. Jobs 2i and 2i+1 are
+	 * scenario i's months [0..12] and its all-values set [13]; ranges of jobs
+	 * are split in half until they are a single job.
+	 */
+	private class ExceedanceTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final TimeSeriesContainer[] timeSeriesResults;
+		private final TimeSeriesContainer[][] results;
+		private final int from;
+		private final int to;
+
+		ExceedanceTask(TimeSeriesContainer[] timeSeriesResults, TimeSeriesContainer[][] results, int from, int to) {
+			this.timeSeriesResults = timeSeriesResults;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
 
-						results[month][i] = new TimeSeriesContainer();
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ExceedanceTask(timeSeriesResults, results, from, mid),
+						new ExceedanceTask(timeSeriesResults, results, mid, to));
+				return;
+			}
+			for (int job = from; job < to; job++) {
+				int i = job / 2;
+				if (job % 2 == 0) {
+
+					// Bucket the scenario by month once and take 13 sets
+					// from it
+
+					ExceedanceEngine engine = ExceedanceEngine.forThread();
+					loadExceedance(engine, timeSeriesResults[i]);
+					for (int month = 0; month < 13; month++)
+						results[month][i] = exceedanceFor(engine, timeSeriesResults[i], i, month);
+				} else
+					results[13][i] = exceedanceFor(null, timeSeriesResults[i], i, 13);
+			}
+		}
+	}
 
-						if ((month == 12) && (annualTAFs != null)) {
+	/**
+	 * Generates the exceedance time series for a single month index from
+	 * monthly DSS results, so that callers needing only one month do not pay
+	 * for all 14.
+	 *
+	 * @param timeSeriesResults
+	 *            array of HEC TimeSeriesContainer objects, each representing a
+	 *            set of results for a scenario.
+	 * @param month
+	 *            index as for getExceedanceSeries(TimeSeriesContainer[]):
+	 *            [0..11] for each month's values, [12] for annual totals and
+	 *            [13] for all values
+	 * @return array of HEC TimeSeriesContainer objects - one for each input
+	 */
+	public TimeSeriesContainer[] getExceedanceSeries(TimeSeriesContainer[] timeSeriesResults, int month) {
 
-							// Annual totals - grab from annualTAFs
-							n = annualTAFs[i].length;
-							times2 = new int[n];
-							values2 = new double[n];
-							for (int j = 0; j < n; j++) {
-								ht.setYearMonthDay(j + startWY, 11, 1, 0);
-								times2[j] = ht.value();
-								values2[j] = annualTAFs[i][j];
-							}
+		if (timeSeriesResults == null || timeSeriesResults[0].times == null)
+			return null;
 
-						} else {
+		int count = timeSeriesResults.length; // One per scenario
+		TimeSeriesContainer[] results = new TimeSeriesContainer[count];
 
-							int[] times = timeSeriesResults[i].times;
-							double[] values = timeSeriesResults[i].values;
+		ExceedanceEngine engine = ExceedanceEngine.forThread();
+		for (int i = 0; i < count; i++) {
+			if (month < 12)
+				loadExceedance(engine, timeSeriesResults[i]);
+			results[i] = exceedanceFor(engine, timeSeriesResults[i], i, month);
+		}
+		return results;
+	}
 
-							n = 0;
-							for (int j = 0; j < times.length; j++) {
-								ht.set(times[j]);
-								if (ht.month() == month + 1)
-									n = n + 1;
-							}
+	/**
+	 * Builds approximate exceedance distributions from monthly DSS results in
+	 * one pass over each scenario, without sorting. Sketches for different
+	 * scenarios (or ensemble members) can be combined with
+	 * QuantileSketch.merge and are read back at any number of percentile
+	 * points.
+	 *
+	 * @param timeSeriesResults
+	 *            array of HEC TimeSeriesContainer objects, each representing a
+	 *            set of results for a scenario.
+	 * @param k
+	 *            sketch accuracy parameter (see QuantileSketch)
+	 * @return array of sketches [month index][scenario], with month indexes as
+	 *         for getExceedanceSeries(TimeSeriesContainer[], int); annual
+	 *         sketches are empty if annual totals have not been calculated
+	 */
+	public QuantileSketch[][] getExceedanceSketches(TimeSeriesContainer[] timeSeriesResults, int k) {
 
-							times2 = new int[n];
-							values2 = new double[n];
-							n = 0;
-							for (int j = 0; j < times.length; j++) {
-								ht.set(times[j]);
-								if (ht.month() == month + 1) {
-									times2[n] = times[j];
-									values2[n] = values[j];
-									n = n + 1;
-								}
-							}
-						}
-						results[month][i].times = times2;
-						results[month][i].values = values2;
-						results[month][i].numberValues = n;
-						results[month][i].units = timeSeriesResults[i].units;
-						results[month][i].fullName = timeSeriesResults[i].fullName;
-						results[month][i].fileName = timeSeriesResults[i].fileName;
-					}
-					if (results[month][i].values != null) {
-						double[] sortArray = results[month][i].values;
-						Arrays.sort(sortArray);
-						results[month][i].values = sortArray;
-					}
-				}
+		if (timeSeriesResults == null || timeSeriesResults[0].times == null)
+			return null;
+
+		int count = timeSeriesResults.length; // One per scenario
+		QuantileSketch[][] results = new QuantileSketch[14][count];
+		for (int i = 0; i < count; i++) {
+			long t0 = System.nanoTime();
+			for (int month = 0; month < 14; month++)
+				results[month][i] = new QuantileSketch(k);
+
+			TimeSeriesContainer tsc = timeSeriesResults[i];
+			int n = (tsc == null) ? 0 : tsc.numberValues;
+			for (int j = 0; j < n; j++) {
+				int m = WaterYearCalendar.month(WaterYearCalendar.yearMonth(tsc.times[j])) - 1;
+				results[m][i].update(tsc.values[j]);
+				results[13][i].update(tsc.values[j]);
 			}
+			if ((annualTAFs != null) && (i < annualTAFs.length))
+				results[12][i].update(annualTAFs[i], 0, annualTAFs[i].length);
+			PipelineMetrics.record(PipelineMetrics.Stage.EXCEEDANCE, t0, n);
 		}
 		return results;
 	}
 
+	private static void loadExceedance(ExceedanceEngine engine, TimeSeriesContainer tsc) {
+		engine.load(tsc.times, tsc.values, tsc.numberValues);
+	}
+
+	/**
+	 * Builds one exceedance series. For months 0..11 the engine must already
+	 * hold the scenario's values.
+	 */
+	private TimeSeriesContainer exceedanceFor(ExceedanceEngine engine, TimeSeriesContainer tsc, int i, int month) {
+
+		TimeSeriesContainer result;
+		if (month == 13) {
+			result = (TimeSeriesContainer) tsc.clone();
+			if (result.values != null) {
+				result.values = Arrays.copyOf(result.values, tsc.numberValues);
+				Arrays.sort(result.values);
+			}
+			return result;
+		}
+
+		int n;
+		int times2[];
+		double values2[];
+
+		result = new TimeSeriesContainer();
+
+		if (month == 12) {
+
+			if (annualTAFs != null) {
+
+				// Annual totals - grab from annualTAFs
+				HecTime ht = new HecTime();
+				n = annualTAFs[i].length;
+				times2 = new int[n];
+				values2 = new double[n];
+				for (int j = 0; j < n; j++) {
+					ht.setYearMonthDay(j + startWY, 11, 1, 0);
+					times2[j] = ht.value();
+					values2[j] = annualTAFs[i][j];
+				}
+				Arrays.sort(values2);
+			} else {
+				n = 0;
+				times2 = new int[0];
+				values2 = new double[0];
+			}
+
+		} else {
+
+			n = engine.getCount(month);
+			times2 = engine.getTimes(month);
+			values2 = engine.getSortedValues(month);
+		}
+		result.times = times2;
+		result.values = values2;
+		result.numberValues = n;
+		result.units = tsc.units;
+		result.fullName = tsc.fullName;
+		result.fileName = tsc.fileName;
+		return result;
+	}
+
 	public TimeSeriesContainer[][] getExceedanceSeriesD(TimeSeriesContainer[] timeSeriesResults) {
 
 		/*
@@ -1039,76 +1435,54 @@ public class DSSGrabber1 {
 		else {
 			results = new TimeSeriesContainer[14][scenarios - 1];
 
-			for (int month = 0; month < 14; month++) {
-
-				HecTime ht = new HecTime();
-				for (int i = 0; i < scenarios - 1; i++) {
+			ExceedanceEngine engine = ExceedanceEngine.forThread();
+			HecTime ht = new HecTime();
+			for (int i = 0; i < scenarios - 1; i++) {
 
-					if (month == 13) {
+				// Differences aligned on time, then bucketed by month
 
-						results[month][i] = (TimeSeriesContainer) timeSeriesResults[i + 1].clone();
-						for (int j = 0; j < results[month][i].numberValues; j++)
-							results[month][i].values[j] -= timeSeriesResults[0].values[j];
+				TimeSeriesContainer diff = DifferenceEngine.difference(timeSeriesResults[0], timeSeriesResults[i + 1]);
+				engine.load(diff.times, diff.values, diff.numberValues);
 
-					} else {
+				for (int month = 0; month < 13; month++) {
 
-						int n;
-						int times2[];
-						double values2[];
+					int n;
+					int times2[];
+					double values2[];
 
-						results[month][i] = new TimeSeriesContainer();
+					results[month][i] = new TimeSeriesContainer();
 
-						if (month == 12) {
+					if (month == 12) {
 
-							// Annual totals - grab from annualTAFs
-							n = annualTAFs[i + 1].length;
-							times2 = new int[n];
-							values2 = new double[n];
-							for (int j = 0; j < n; j++) {
-								ht.setYearMonthDay(j + startWY, 11, 1, 0);
-								times2[j] = ht.value();
-								values2[j] = annualTAFs[i + 1][j] - annualTAFs[0][j];
-							}
+						// Annual totals - grab from annualTAFs
+						n = annualTAFs[i + 1].length;
+						times2 = new int[n];
+						values2 = new double[n];
+						for (int j = 0; j < n; j++) {
+							ht.setYearMonthDay(j + startWY, 11, 1, 0);
+							times2[j] = ht.value();
+							values2[j] = annualTAFs[i + 1][j] - annualTAFs[0][j];
+						}
+						Arrays.sort(values2);
 
-						} else {
+					} else {
 
-							int[] times = timeSeriesResults[i + 1].times;
-							double[] values = timeSeriesResults[i + 1].values;
-							n = 0;
-							for (int j = 0; j < times.length; j++) {
-								ht.set(times[j]);
-								if (ht.month() == month + 1)
-									n = n + 1;
-							}
-							times2 = new int[n];
-							values2 = new double[n];
-							int nmax = n; // Added to trap Schematic View case
-											// where required flow has extra
-											// values
-							n = 0;
-							for (int j = 0; j < times.length; j++) {
-								ht.set(times[j]);
-								if ((ht.month() == month + 1) && (n < nmax)
-										&& (j < timeSeriesResults[0].values.length)) {
-									times2[n] = times[j];
-									values2[n] = values[j] - timeSeriesResults[0].values[j];
-									n = n + 1;
-								}
-							}
-						}
-						results[month][i].times = times2;
-						results[month][i].values = values2;
-						results[month][i].numberValues = n;
-						results[month][i].units = timeSeriesResults[i + 1].units;
-						results[month][i].fullName = timeSeriesResults[i + 1].fullName;
-						results[month][i].fileName = timeSeriesResults[i + 1].fileName;
-					}
-					if (results[month][i].values != null) {
-						double[] sortArray = results[month][i].values;
-						Arrays.sort(sortArray);
-						results[month][i].values = sortArray;
+						n = engine.getCount(month);
+						times2 = engine.getTimes(month);
+						values2 = engine.getSortedValues(month);
 					}
+					results[month][i].times = times2;
+					results[month][i].values = values2;
+					results[month][i].numberValues = n;
+					results[month][i].units = timeSeriesResults[i + 1].units;
+					results[month][i].fullName = timeSeriesResults[i + 1].fullName;
+					results[month][i].fileName = timeSeriesResults[i + 1].fileName;
 				}
+
+				// All values; the differences are a fresh copy, so sort in place
+
+				Arrays.sort(diff.values, 0, diff.numberValues);
+				results[13][i] = diff;
 			}
 		}
 		return results;
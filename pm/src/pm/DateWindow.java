@@ -0,0 +1,84 @@
+package pm;
+
+import hec.heclib.util.HecTime;
+
+/**
+ * Immutable date window used to trim DSS results: start and end time (HEC
+ * minutes) and the corresponding USGS water years.
+ */
+public class DateWindow {
+
+	private final int startTime;
+	private final int endTime;
+	private final int startWY;
+	private final int endWY;
+
+	public DateWindow(int startTime, int endTime, int startWY, int endWY) {
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.startWY = startWY;
+		this.endWY = endWY;
+	}
+
+	/**
+	 * Parses a date range string the same way as DSSGrabber1.setDateRange.
+	 *
+	 * @param dateRange
+	 *            string describing the date range in format mmmyyyy-mmmyyyy.
+	 *            For example, the string "Apr1961-Mar1962" sets the date range
+	 *            to run from April 1961 to March 1962.
+	 * @return the parsed window
+	 * @throws IllegalArgumentException
+	 *             if the string is not in the expected format
+	 */
+	public static DateWindow parse(String dateRange) {
+
+		try {
+			HecTime ht = new HecTime();
+
+			int m = monthToInt(dateRange.substring(0, 3));
+			int y = Integer.parseInt(dateRange.substring(3, 7));
+			ht.setYearMonthDay(m == 12 ? y + 1 : y, m == 12 ? 1 : m + 1, 1, 0);
+
+			int startTime = ht.value();
+			int startWY = (m < 10) ? y : y + 1; // Water year
+
+			// End month is currently fixed at September (end of water year),
+			// as in DSSGrabber1.setDateRange
+
+			m = 9;
+			y = Integer.parseInt(dateRange.substring(11, 15));
+			ht.setYearMonthDay(m == 12 ? y + 1 : y, m == 12 ? 1 : m + 1, 1, 0);
+			int endTime = ht.value();
+			int endWY = ((m < 10) ? y : y + 1);
+
+			return new DateWindow(startTime, endTime, startWY, endWY);
+
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid date range " + dateRange, e);
+		}
+	}
+
+	private static int monthToInt(String month) {
+		int i = "janfebmaraprmayjunjulaugsepoctnovdec".indexOf(month.toLowerCase());
+		if ((month.length() != 3) || (i < 0) || (i % 3 != 0))
+			throw new IllegalArgumentException("Invalid month " + month);
+		return i / 3 + 1;
+	}
+
+	public int getStartTime() {
+		return startTime;
+	}
+
+	public int getEndTime() {
+		return endTime;
+	}
+
+	public int getStartWY() {
+		return startWY;
+	}
+
+	public int getEndWY() {
+		return endWY;
+	}
+}
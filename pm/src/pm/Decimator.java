@@ -0,0 +1,109 @@
+package pm;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a line series to what can be seen at a given pixel width. The x
+ * range on screen is split into one bucket per pixel column, and from each run
+ * of points in a column only the first, last, smallest and largest are kept
+ * (the "M4" scheme), so the line drawn is the same as with every point while
+ * the number of points stays at most four per column. Points off screen are
+ * dropped, except the neighbours of visible points so that lines still reach
+ * the edges.
+ * <p>
+ * x values should be in ascending or descending order (as for time series and
+ * exceedance curves); unordered series are still reduced correctly but less
+ * well.
+ */
+public final class Decimator {
+
+	private Decimator() {
+	}
+
+	/**
+	 * @param x
+	 *            x values
+	 * @param y
+	 *            y values
+	 * @param n
+	 *            number of points
+	 * @param lo
+	 *            smallest visible x
+	 * @param hi
+	 *            largest visible x
+	 * @param buckets
+	 *            number of pixel columns
+	 * @return arrays {x, y} of the points to draw, in their original order;
+	 *         copies of the input if it is already small enough
+	 */
+	public static double[][] decimate(double[] x, double[] y, int n, double lo, double hi, int buckets) {
+
+		if ((n <= 4 * buckets) || (buckets <= 0) || !(hi > lo))
+			return new double[][] { Arrays.copyOf(x, n), Arrays.copyOf(y, n) };
+
+		double[] outX = new double[4 * buckets + 8];
+		double[] outY = new double[outX.length];
+		int out = 0;
+		double scale = buckets / (hi - lo);
+
+		int runKey = -1; // Bucket of the current run, -1 for none
+		int first = 0;
+		int last = 0;
+		int min = 0;
+		int max = 0;
+		for (int i = 0; i <= n; i++) {
+			int key = (i < n) ? bucket(x[i], lo, hi, scale, buckets) : -1;
+			if ((key >= 0) && (key == runKey)) {
+				last = i;
+				if (y[i] < y[min])
+					min = i;
+				if (y[i] > y[max])
+					max = i;
+				continue;
+			}
+
+			// End the current run: its four points in index order
+
+			if (runKey >= 0) {
+				int[] keep = { first, min, max, last };
+				Arrays.sort(keep);
+				for (int k = 0; k < 4; k++)
+					if ((k == 0) || (keep[k] != keep[k - 1])) {
+						if (out + 1 >= outX.length) {
+							outX = Arrays.copyOf(outX, 2 * outX.length);
+							outY = Arrays.copyOf(outY, outX.length);
+						}
+						outX[out] = x[keep[k]];
+						outY[out++] = y[keep[k]];
+					}
+			}
+			runKey = key;
+			first = last = min = max = i;
+
+			// Off screen: keep only points next to visible ones
+
+			if ((key < 0) && (i < n)) {
+				boolean before = (i > 0) && (bucket(x[i - 1], lo, hi, scale, buckets) >= 0);
+				boolean after = (i < n - 1) && (bucket(x[i + 1], lo, hi, scale, buckets) >= 0);
+				if (before || after) {
+					if (out + 1 >= outX.length) {
+						outX = Arrays.copyOf(outX, 2 * outX.length);
+						outY = Arrays.copyOf(outY, outX.length);
+					}
+					outX[out] = x[i];
+					outY[out++] = y[i];
+				}
+			}
+		}
+		return new double[][] { Arrays.copyOf(outX, out), Arrays.copyOf(outY, out) };
+	}
+
+	/**
+	 * @return pixel column of x, or -1 if it is off screen (or NaN)
+	 */
+	private static int bucket(double x, double lo, double hi, double scale, int buckets) {
+		if (!((x >= lo) && (x <= hi)))
+			return -1;
+		return Math.min(buckets - 1, (int) ((x - lo) * scale));
+	}
+}
@@ -0,0 +1,109 @@
+package pm;
+
+import java.util.Arrays;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * Differences between scenario series aligned on their time axes rather than
+ * by index. Each alternative is merge-joined with the base in a single pass
+ * over both time arrays (which must be in ascending order), so series with
+ * different start dates, lengths or gaps are compared only at the times both
+ * have. Results are written into primitive arrays sized once for the largest
+ * possible overlap; nothing else is allocated per value.
+ */
+public final class DifferenceEngine {
+
+	private DifferenceEngine() {
+	}
+
+	/**
+	 * Merge-joins two series and writes alt - base at each time present in
+	 * both.
+	 *
+	 * @param baseTimes
+	 *            base times, ascending
+	 * @param baseValues
+	 *            base values
+	 * @param baseCount
+	 *            number of base values
+	 * @param altTimes
+	 *            alternative times, ascending
+	 * @param altValues
+	 *            alternative values
+	 * @param altCount
+	 *            number of alternative values
+	 * @param outTimes
+	 *            receives the common times; at least min(baseCount, altCount)
+	 *            long
+	 * @param outValues
+	 *            receives the differences; same length as outTimes
+	 * @return number of common times written
+	 */
+	public static int difference(int[] baseTimes, double[] baseValues, int baseCount, int[] altTimes,
+			double[] altValues, int altCount, int[] outTimes, double[] outValues) {
+
+		int i = 0;
+		int j = 0;
+		int n = 0;
+		while ((i < baseCount) && (j < altCount)) {
+			int tb = baseTimes[i];
+			int ta = altTimes[j];
+			if (tb < ta)
+				i++;
+			else if (ta < tb)
+				j++;
+			else {
+				outTimes[n] = ta;
+				outValues[n++] = altValues[j++] - baseValues[i++];
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @param base
+	 *            base series
+	 * @param alt
+	 *            alternative series
+	 * @return new series with the name, file, units, type and interval of alt,
+	 *         holding alt - base at the times both series have
+	 */
+	public static TimeSeriesContainer difference(TimeSeriesContainer base, TimeSeriesContainer alt) {
+
+		int size = Math.min(base.numberValues, alt.numberValues);
+		int[] times = new int[Math.max(0, size)];
+		double[] values = new double[times.length];
+		int n = difference(base.times, base.values, base.numberValues, alt.times, alt.values, alt.numberValues, times,
+				values);
+
+		TimeSeriesContainer result = new TimeSeriesContainer();
+		result.fullName = alt.fullName;
+		result.fileName = alt.fileName;
+		result.units = alt.units;
+		result.type = alt.type;
+		result.interval = alt.interval;
+		result.times = (n == times.length) ? times : Arrays.copyOf(times, n);
+		result.values = (n == values.length) ? values : Arrays.copyOf(values, n);
+		result.numberValues = n;
+		if (n > 0) {
+			result.startTime = result.times[0];
+			result.endTime = result.times[n - 1];
+		}
+		return result;
+	}
+
+	/**
+	 * @param series
+	 *            base series followed by alternatives
+	 * @param count
+	 *            number of series to use, base included
+	 * @return difference from the base for each alternative, count - 1 in all
+	 */
+	public static TimeSeriesContainer[] differences(TimeSeriesContainer[] series, int count) {
+		TimeSeriesContainer[] results = new TimeSeriesContainer[Math.max(0, count - 1)];
+		for (int i = 0; i < results.length; i++)
+			results[i] = difference(series[0], series[i + 1]);
+		return results;
+	}
+}
@@ -0,0 +1,260 @@
+package pm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.log4j.Logger;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * Optional on-disk cache of decoded DSS series, so that later startups against
+ * an unchanged scenario file do not have to go through heclib. The cache is
+ * enabled by setting the system property pm.diskCache.dir to a directory.
+ * <p>
+ * Each dataset read from a DSS file (after summation, before trimming to a date
+ * range) is stored in its own file named by a hash of the DSS file path and
+ * dataset name. The file holds a fixed header, the times as a column of ints,
+ * the values as a column of doubles, and then the units, type and full name.
+ * The header records the size and modification time of the DSS file, and
+ * entries that no longer match are ignored and rewritten. Entries are small,
+ * so each is read whole into a heap buffer rather than memory-mapped; a file
+ * that is still mapped cannot be replaced on Windows.
+ */
+public class DiskSeriesCache {
+
+	static Logger log = Logger.getLogger(DiskSeriesCache.class.getName());
+
+	static final int MAGIC = 0x504d4332; // "PMC2" - time shifts applied
+	static final int HEADER_BYTES = 32; // Magic, count, mtime, length, offset
+	static final String SUFFIX = ".pmc";
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static DiskSeriesCache instance;
+
+	private final File dir; // null when disabled
+
+	DiskSeriesCache(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Returns the application-wide cache. It is disabled (all lookups miss, all
+	 * stores are ignored) unless pm.diskCache.dir names a usable directory.
+	 *
+	 * @return the shared cache
+	 */
+	public static synchronized DiskSeriesCache getInstance() {
+		if (instance == null) {
+			File dir = null;
+			String prop = System.getProperty("pm.diskCache.dir");
+			if ((prop != null) && !prop.trim().equals("")) {
+				dir = new File(prop.trim());
+				if (!dir.isDirectory() && !dir.mkdirs()) {
+					log.info("Cannot create series cache directory " + dir + " - disk cache off");
+					dir = null;
+				}
+			}
+			instance = new DiskSeriesCache(dir);
+		}
+		return instance;
+	}
+
+	public boolean isEnabled() {
+		return dir != null;
+	}
+
+	/**
+	 * Reads a decoded series from the cache.
+	 *
+	 * @param dssFilename
+	 *            name of HEC DSS file the series was read from
+	 * @param dssName
+	 *            dataset name expression as passed to getOneSeries
+	 * @return the series, untrimmed, or null if it is not cached or the DSS
+	 *         file has changed since it was
+	 */
+	public TimeSeriesContainer get(String dssFilename, String dssName) {
+
+		if (dir == null)
+			return null;
+
+		File source = new File(dssFilename);
+		File f = cacheFile(source, dssName);
+		if (!f.isFile())
+			return null;
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(f, "r");
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buf = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			while (buf.hasRemaining())
+				if (channel.read(buf) < 0)
+					return null; // Truncated
+			buf.flip();
+
+			if ((buf.getInt(0) != MAGIC) || (buf.getLong(8) != source.lastModified())
+					|| (buf.getLong(16) != source.length()))
+				return null; // Stale
+
+			int n = buf.getInt(4);
+			int stringsOffset = buf.getInt(24);
+
+			TimeSeriesContainer tsc = new TimeSeriesContainer();
+			tsc.times = new int[n];
+			tsc.values = new double[n];
+			((ByteBuffer) buf.position(HEADER_BYTES)).asIntBuffer().get(tsc.times);
+			((ByteBuffer) buf.position(HEADER_BYTES + 4 * n)).asDoubleBuffer().get(tsc.values);
+			tsc.numberValues = n;
+
+			buf.position(stringsOffset);
+			tsc.units = readString(buf);
+			tsc.type = readString(buf);
+			tsc.fullName = readString(buf);
+			if (n > 0) {
+				tsc.startTime = tsc.times[0];
+				tsc.endTime = tsc.times[n - 1];
+			}
+			return tsc;
+
+		} catch (Exception e) {
+			log.debug("Unable to read series cache file " + f + ": " + e.getMessage());
+			return null;
+		} finally {
+			close(raf);
+		}
+	}
+
+	/**
+	 * Stores a decoded series. Empty series are not stored.
+	 *
+	 * @param dssFilename
+	 *            name of HEC DSS file the series was read from
+	 * @param dssName
+	 *            dataset name expression as passed to getOneSeries
+	 * @param tsc
+	 *            series as decoded, before trimming
+	 */
+	public void put(String dssFilename, String dssName, TimeSeriesContainer tsc) {
+
+		if ((dir == null) || (tsc == null) || (tsc.numberValues < 1))
+			return;
+
+		File source = new File(dssFilename);
+		File f = cacheFile(source, dssName);
+		File tmp = null;
+		RandomAccessFile raf = null;
+		try {
+			int n = tsc.numberValues;
+			byte[] units = bytes(tsc.units);
+			byte[] type = bytes(tsc.type);
+			byte[] fullName = bytes(tsc.fullName);
+			int stringsOffset = HEADER_BYTES + 12 * n;
+			int size = stringsOffset + 12 + length(units) + length(type) + length(fullName);
+
+			ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+			buf.putInt(MAGIC).putInt(n).putLong(source.lastModified()).putLong(source.length())
+					.putInt(stringsOffset).putInt(0);
+			buf.asIntBuffer().put(tsc.times, 0, n);
+			buf.position(HEADER_BYTES + 4 * n);
+			buf.asDoubleBuffer().put(tsc.values, 0, n);
+			buf.position(stringsOffset);
+			putString(buf, units);
+			putString(buf, type);
+			putString(buf, fullName);
+			buf.flip();
+
+			// Write to a temporary file and move it into place so readers
+			// never see a partial file
+
+			tmp = File.createTempFile("series", ".tmp", dir);
+			raf = new RandomAccessFile(tmp, "rw");
+			raf.getChannel().write(buf);
+			close(raf);
+			raf = null;
+			Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			tmp = null;
+
+		} catch (IOException e) {
+			log.warn("Unable to write series cache file " + f + ": " + e.getMessage());
+		} finally {
+			close(raf);
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	/**
+	 * Deletes all cache files.
+	 */
+	public void clear() {
+		if (dir == null)
+			return;
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File f : files)
+				if (f.getName().endsWith(SUFFIX))
+					f.delete();
+	}
+
+	private File cacheFile(File source, String dssName) {
+		return new File(dir, hash(source.getAbsolutePath() + "|" + dssName) + SUFFIX);
+	}
+
+	private static String hash(String s) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			StringBuilder sb = new StringBuilder();
+			for (byte b : md.digest(s.getBytes(UTF8)))
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(s.hashCode());
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		return s == null ? null : s.getBytes(UTF8);
+	}
+
+	private static int length(byte[] b) {
+		return b == null ? 0 : b.length;
+	}
+
+	// Strings are stored as a length (-1 for null) followed by UTF-8 bytes
+
+	private static void putString(ByteBuffer buf, byte[] b) {
+		if (b == null)
+			buf.putInt(-1);
+		else
+			buf.putInt(b.length).put(b);
+	}
+
+	private static String readString(ByteBuffer buf) {
+		int length = buf.getInt();
+		if (length < 0)
+			return null;
+		byte[] b = new byte[length];
+		buf.get(b);
+		return new String(b, UTF8);
+	}
+
+	private static void close(RandomAccessFile raf) {
+		if (raf != null)
+			try {
+				raf.close();
+			} catch (IOException e) {
+				log.debug(e.getMessage());
+			}
+	}
+}
@@ -0,0 +1,131 @@
+package pm;
+
+import java.util.Arrays;
+
+/**
+ * Splits a monthly series into its calendar months and sorts each month's
+ * values for exceedance plots. Each time is decoded to a month only once, the
+ * values are bucketed by month in a single pass, and each bucket is sorted in
+ * place with a primitive sort. Working buffers are kept and reused between
+ * series, so an engine is not thread-safe; use forThread() to get one per
+ * thread.
+ * <p>
+ * Typical usage:
+ *
+ * <pre>
+ * ExceedanceEngine engine = ExceedanceEngine.forThread();
+ * engine.load(times, values, n);
+ * double[] sortedJanuary = engine.getSortedValues(0);
+ * </pre>
+ */
+public class ExceedanceEngine {
+
+	private static final ThreadLocal<ExceedanceEngine> engines = new ThreadLocal<ExceedanceEngine>() {
+		@Override
+		protected ExceedanceEngine initialValue() {
+			return new ExceedanceEngine();
+		}
+	};
+
+	private final int[] start = new int[13]; // Bucket m is [start[m],
+												// start[m+1])
+	private byte[] months = new byte[0]; // Month index (0..11) of each value
+	private int[] times = new int[0]; // Times and values grouped by month;
+	private double[] values = new double[0]; // values sorted within each
+												// month
+
+	/**
+	 * @return an engine for use on the current thread only
+	 */
+	public static ExceedanceEngine forThread() {
+		return engines.get();
+	}
+
+	/**
+	 * Buckets and sorts a series by calendar month.
+	 *
+	 * @param t
+	 *            times (HEC minutes)
+	 * @param v
+	 *            values
+	 * @param n
+	 *            number of entries of t and v to use
+	 */
+	public void load(int[] t, double[] v, int n) {
+
+		long t0 = System.nanoTime();
+
+		if (months.length < n) {
+			months = new byte[n];
+			times = new int[n];
+			values = new double[n];
+		}
+
+		// Decode each time once and count per month
+
+		int[] count = new int[12];
+		for (int j = 0; j < n; j++) {
+			int m = WaterYearCalendar.month(WaterYearCalendar.yearMonth(t[j])) - 1;
+			months[j] = (byte) m;
+			count[m]++;
+		}
+
+		start[0] = 0;
+		for (int m = 0; m < 12; m++)
+			start[m + 1] = start[m] + count[m];
+
+		// Scatter into buckets (keeping time order within each), then sort
+		// each bucket's values
+
+		int[] next = Arrays.copyOf(start, 12);
+		for (int j = 0; j < n; j++) {
+			int k = next[months[j]]++;
+			times[k] = t[j];
+			values[k] = v[j];
+		}
+		for (int m = 0; m < 12; m++)
+			Arrays.sort(values, start[m], start[m + 1]);
+		PipelineMetrics.record(PipelineMetrics.Stage.EXCEEDANCE, t0, n);
+	}
+
+	/**
+	 * @param month
+	 *            month index, 0 for January to 11 for December
+	 * @return number of values in the month
+	 */
+	public int getCount(int month) {
+		return start[month + 1] - start[month];
+	}
+
+	/**
+	 * @param month
+	 *            month index, 0 for January to 11 for December
+	 * @return new array of the month's values, sorted ascending
+	 */
+	public double[] getSortedValues(int month) {
+		return Arrays.copyOfRange(values, start[month], start[month + 1]);
+	}
+
+	/**
+	 * @param month
+	 *            month index, 0 for January to 11 for December
+	 * @return new array of the month's times, in their original order
+	 */
+	public int[] getTimes(int month) {
+		return Arrays.copyOfRange(times, start[month], start[month + 1]);
+	}
+
+	/**
+	 * Copies a month's sorted values into an existing array.
+	 *
+	 * @param month
+	 *            month index, 0 for January to 11 for December
+	 * @param dest
+	 *            destination array
+	 * @param destPos
+	 *            starting position in the destination
+	 */
+	public void copySortedValues(int month, double[] dest, int destPos) {
+		System.arraycopy(values, start[month], dest, destPos, getCount(month));
+	}
+}
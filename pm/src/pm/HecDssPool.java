@@ -0,0 +1,228 @@
+package pm;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Pool of open HEC-DSS file handles (TimeSeriesSource, normally heclib) keyed
+ * by (absolute) file path. Each file is opened once and shared by all
+ * readers; callers bracket their reads with acquire/release so the pool can
+ * count references. Handles that have not been used for the idle period are
+ * closed by a background timer, and all handles are closed on shutdown. A
+ * handle in use is never closed or removed from the pool; it is closed on its
+ * last release instead.
+ * <p>
+ * Typical usage:
+ *
+ * <pre>
+ * TimeSeriesSource hD = HecDssPool.getInstance().acquire(dssFilename);
+ * try {
+ * 	...
+ * } finally {
+ * 	HecDssPool.getInstance().release(dssFilename);
+ * }
+ * </pre>
+ */
+public class HecDssPool {
+
+	static Logger log = Logger.getLogger(HecDssPool.class.getName());
+	static final long DEFAULT_IDLE_MILLIS = 60000; // Close handles unused for
+													// one minute
+
+	private static HecDssPool instance;
+
+	private final Map<String, Handle> handles = new HashMap<String, Handle>();
+	private long idleMillis = DEFAULT_IDLE_MILLIS;
+	private Timer evictionTimer;
+
+	/**
+	 * One pooled file: the open source, the number of readers currently using
+	 * it, when it was last released, and whether closeAll asked for it to be
+	 * closed once no longer in use.
+	 */
+	private static class Handle {
+		TimeSeriesSource hD;
+		int refCount;
+		long lastReleased;
+		boolean closeOnRelease;
+	}
+
+	private HecDssPool() {
+	}
+
+	/**
+	 * Returns the application-wide pool, creating it (and registering its
+	 * shutdown hook and eviction timer) on first use.
+	 *
+	 * @return the shared pool
+	 */
+	public static synchronized HecDssPool getInstance() {
+		if (instance == null) {
+			instance = new HecDssPool();
+			instance.scheduleEviction();
+			Runtime.getRuntime().addShutdownHook(new Thread("HecDssPool shutdown") {
+				@Override
+				public void run() {
+					instance.closeAll();
+				}
+			});
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets an open handle for a DSS file, opening the file only if it is not
+	 * already in the pool. Every successful call must be matched by a call to
+	 * release.
+	 *
+	 * @param dssFilename
+	 *            name of HEC DSS file
+	 * @return open handle, as opened by TimeSeriesSources.open
+	 * @throws Exception
+	 *             if the file cannot be opened
+	 */
+	public TimeSeriesSource acquire(String dssFilename) throws Exception {
+
+		String key = keyFor(dssFilename);
+		Handle h;
+		synchronized (this) {
+			h = handles.get(key);
+			if (h == null) {
+				h = new Handle();
+				handles.put(key, h);
+			}
+			h.refCount++;
+		}
+
+		// Open outside the pool lock so that other files are not held up
+
+		synchronized (h) {
+			if (h.hD == null) {
+				try {
+					long t0 = System.nanoTime();
+					h.hD = TimeSeriesSources.open(dssFilename);
+					PipelineMetrics.record(PipelineMetrics.Stage.OPEN, t0, 0, new File(dssFilename).length());
+				} catch (Exception e) {
+					release(dssFilename);
+					throw e;
+				}
+			}
+			return h.hD;
+		}
+	}
+
+	/**
+	 * Releases a handle obtained from acquire. The file stays open until it has
+	 * been idle for the eviction period or the pool is closed.
+	 *
+	 * @param dssFilename
+	 *            name of HEC DSS file passed to acquire
+	 */
+	public synchronized void release(String dssFilename) {
+
+		String key = keyFor(dssFilename);
+		Handle h = handles.get(key);
+		if (h == null)
+			return;
+		h.refCount--;
+		h.lastReleased = System.currentTimeMillis();
+		if (h.refCount > 0)
+			return;
+		if (h.closeOnRelease) {
+			handles.remove(key);
+			close(key, h);
+		} else if (h.hD == null)
+			handles.remove(key); // Open failed - nothing to keep
+	}
+
+	/**
+	 * Closes and removes all handles that are not in use and have been idle
+	 * longer than the eviction period.
+	 */
+	public synchronized void evictIdle() {
+
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<String, Handle>> it = handles.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Handle> e = it.next();
+			Handle h = e.getValue();
+			if ((h.refCount <= 0) && (now - h.lastReleased >= idleMillis)) {
+				it.remove();
+				close(e.getKey(), h);
+			}
+		}
+	}
+
+	/**
+	 * Closes every pooled handle that is not in use; handles in use are closed
+	 * on their last release. Called on application shutdown.
+	 */
+	public synchronized void closeAll() {
+
+		Iterator<Map.Entry<String, Handle>> it = handles.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Handle> e = it.next();
+			Handle h = e.getValue();
+			if (h.refCount > 0)
+				h.closeOnRelease = true; // Readers are still using it
+			else {
+				it.remove();
+				close(e.getKey(), h);
+			}
+		}
+	}
+
+	/**
+	 * Sets the time a handle may stay unused before it is closed.
+	 *
+	 * @param idleMillis
+	 *            idle period in milliseconds
+	 */
+	public synchronized void setIdleMillis(long idleMillis) {
+		this.idleMillis = idleMillis;
+		scheduleEviction();
+	}
+
+	/**
+	 * @return number of files currently open in the pool
+	 */
+	public synchronized int size() {
+		return handles.size();
+	}
+
+	private synchronized void scheduleEviction() {
+
+		if (evictionTimer != null)
+			evictionTimer.cancel();
+		evictionTimer = new Timer("HecDssPool eviction", true);
+		long period = Math.max(1000, idleMillis / 2);
+		evictionTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				evictIdle();
+			}
+		}, period, period);
+	}
+
+	private void close(String key, Handle h) {
+
+		if (h.hD == null)
+			return;
+		try {
+			h.hD.close();
+		} catch (Exception e) {
+			log.debug("Unable to close HEC-DSS file " + key + ": " + e.getMessage());
+		}
+		h.hD = null;
+	}
+
+	private static String keyFor(String dssFilename) {
+		return new File(dssFilename).getAbsolutePath();
+	}
+}
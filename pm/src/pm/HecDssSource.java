@@ -0,0 +1,45 @@
+package pm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+import hec.heclib.dss.HecDss;
+import hec.io.TimeSeriesContainer;
+
+/**
+ * TimeSeriesSource backed by a HEC-DSS file opened through heclib.
+ */
+public class HecDssSource implements TimeSeriesSource {
+
+	private final HecDss hD;
+
+	/**
+	 * Opens a HEC-DSS file.
+	 *
+	 * @param dssFilename
+	 *            name of HEC DSS file
+	 * @throws Exception
+	 *             if heclib cannot open the file
+	 */
+	public HecDssSource(String dssFilename) throws Exception {
+		hD = HecDss.open(dssFilename);
+	}
+
+	@Override
+	public List<String> getPathnameList() {
+		@SuppressWarnings("unchecked")
+		Vector<String> pathnames = hD.getPathnameList();
+		return pathnames == null ? new ArrayList<String>() : pathnames;
+	}
+
+	@Override
+	public TimeSeriesContainer get(String pathname, boolean readEntire) throws Exception {
+		return (TimeSeriesContainer) hD.get(pathname, readEntire);
+	}
+
+	@Override
+	public void close() {
+		hD.close();
+	}
+}
@@ -0,0 +1,186 @@
+package pm;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves location names, as passed to DSSGrabber1.setLocation, to dataset
+ * names, axis labels and title. Power names (starting with "*") and WRIMS GUI
+ * pathnames (starting with "/") are resolved directly. Other names are looked
+ * up in the GUI_Links3 table, or in the Schematic_DSS_link4 table for names
+ * starting with "SchVw" (matched in upper case).
+ * <p>
+ * A name matches a table row if it ends with the row's key; if several rows
+ * match, the last one wins. Each table is compiled once into a hash map from
+ * key to last row, so a name is resolved by looking up its suffixes (no longer
+ * than the longest key) rather than by scanning the table.
+ */
+public final class LocationIndex {
+
+	/**
+	 * What a location name resolves to.
+	 */
+	public static final class Location {
+		private final String primaryDSSName;
+		private final String secondaryDSSName;
+		private final String yLabel;
+		private final String title;
+		private final String sLabel;
+
+		Location(String primaryDSSName, String secondaryDSSName, String yLabel, String title, String sLabel) {
+			this.primaryDSSName = primaryDSSName;
+			this.secondaryDSSName = secondaryDSSName;
+			this.yLabel = yLabel;
+			this.title = title;
+			this.sLabel = sLabel;
+		}
+
+		public String getPrimaryDSSName() {
+			return primaryDSSName;
+		}
+
+		public String getSecondaryDSSName() {
+			return secondaryDSSName;
+		}
+
+		public String getYLabel() {
+			return yLabel;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public String getSLabel() {
+			return sLabel;
+		}
+	}
+
+	/**
+	 * One compiled lookup table.
+	 */
+	private static final class Table {
+		private final Map<String, Integer> rowByKey = new HashMap<String, Integer>();
+		private final Location[] locations;
+		private int maxKeyLength;
+
+		/**
+		 * @param rows
+		 *            rows of {key, primary, secondary, y label, title, s
+		 *            label}; may be null
+		 */
+		Table(String[][] rows) {
+			locations = new Location[rows == null ? 0 : rows.length];
+			for (int i = 0; i < locations.length; i++) {
+				String[] row = rows[i];
+				if ((row == null) || (row[0] == null))
+					continue;
+				locations[i] = new Location(row[1], row[2], row[3], row[4], row[5]);
+				rowByKey.put(row[0], i); // Last row with a key wins
+				maxKeyLength = Math.max(maxKeyLength, row[0].length());
+			}
+		}
+
+		/**
+		 * @return location of the last row whose key ends the name, or null
+		 */
+		Location find(String name) {
+
+			// Several suffixes may be keys; the row found last in the table
+			// wins, as it did when the table was scanned
+
+			int found = -1;
+			for (int start = Math.max(0, name.length() - maxKeyLength); start <= name.length(); start++) {
+				Integer row = rowByKey.get(name.substring(start));
+				if ((row != null) && (row > found))
+					found = row;
+			}
+			return found < 0 ? null : locations[found];
+		}
+	}
+
+	private static LocationIndex instance;
+
+	private final Table links;
+	private final Table schematic;
+
+	LocationIndex(String[][] links, String[][] schematic) {
+		this.links = new Table(links);
+		this.schematic = new Table(schematic);
+	}
+
+	/**
+	 * @return index compiled from the tables read by ResultUtils, built on
+	 *         first use
+	 */
+	static synchronized LocationIndex getInstance() {
+		if (instance == null) {
+			ResultUtils ru = ResultUtils.getXMLParsingSvcImplInstance(null);
+			instance = new LocationIndex(copy(ru, false), copy(ru, true));
+		}
+		return instance;
+	}
+
+	private static String[][] copy(ResultUtils ru, boolean schematic) {
+		if ((ru == null) || !(schematic ? ru.hasLookups5() : ru.hasLookups()))
+			return null; // Table could not be read
+		String[][] rows = new String[schematic ? ru.getLookups5Length() : ru.getLookupsLength()][];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = new String[6];
+			for (int j = 0; j < 6; j++)
+				rows[i][j] = schematic ? ru.getLookups5(i, j) : ru.getLookups(i, j);
+		}
+		return rows;
+	}
+
+	/**
+	 * Resolves a location name. The lookup tables are only read for names
+	 * that need them.
+	 *
+	 * @param locationName
+	 *            location name, as for DSSGrabber1.setLocation
+	 * @return resolved location, or null if no table row matches
+	 */
+	public static Location resolve(String locationName) {
+
+		String name = locationName.trim();
+		if (name.startsWith("*")) {
+			// Power management locations
+			return new Location(name, "", "", name, "");
+		}
+		if (name.startsWith("/")) {
+			// Names passed from WRIMS GUI
+			String parts[] = name.split("/");
+			return new Location(parts[2] + "/" + parts[3] + "/" + parts[6], "", "", name, "");
+		}
+		return getInstance().find(name);
+	}
+
+	/**
+	 * @param name
+	 *            trimmed location name, not a power name or pathname
+	 * @return location of the last matching row of the table for the name, or
+	 *         null
+	 */
+	Location find(String name) {
+		if (name.startsWith("SchVw"))
+			return schematic.find(name.toUpperCase());
+		return links.find(name);
+	}
+
+	/**
+	 * Resolves many location names at once, e.g. for a report.
+	 *
+	 * @param locationNames
+	 *            location names
+	 * @return resolved locations in the same order; null where no table row
+	 *         matches
+	 */
+	public static Location[] resolveAll(List<String> locationNames) {
+		Location[] results = new Location[locationNames.size()];
+		for (int i = 0; i < results.length; i++)
+			results[i] = resolve(locationNames.get(i));
+		return results;
+	}
+}
@@ -0,0 +1,325 @@
+package pm;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * Headless batch export of the power results shown by PM_Demo: every station
+ * and C-part of ChartPanel2 for each of a list of scenario files. Scenario
+ * files are read in parallel through DSSGrabber1.getSeries. For each series
+ * the monthly values, water-year totals (TAF volumes for CFS series, plain
+ * sums otherwise) and exceedance values by month, for annual totals and for
+ * all values are written out. Records that cannot be read are listed in a
+ * summary at the end rather than shown in dialogs; the exit code is 2 if any
+ * were missing.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java pm.PM_Batch [-csv | -bin] [-out dir] [-range FEB1924-SEP2003] scenario.dss ...
+ * </pre>
+ * <p>
+ * CSV output is three files in long form, one row per value: monthly.csv
+ * (scenario,station,cpart,month,value), annual.csv
+ * (scenario,station,cpart,wy,total,months) and exceedance.csv
+ * (scenario,station,cpart,period,percent,value). Binary output is a single
+ * file, pm_batch.bin, written with DataOutputStream:
+ *
+ * <pre>
+ * "PMB1", int scenarios, UTF file name per scenario, int series, then per series:
+ *   int scenario, UTF station, UTF cpart, UTF units,
+ *   int n, n x (int HEC time, float value),
+ *   int years, years x (int water year, float total, byte months),
+ *   14 x (int n, n x float) - sorted values for JAN..DEC, annual totals, all
+ * </pre>
+ *
+ * Values are written as floats, the precision DSS stores them in.
+ */
+public class PM_Batch {
+
+	static Logger log = Logger.getLogger(PM_Batch.class.getName());
+
+	static final String MAGIC = "PMB1";
+	static final String[] PERIODS = { "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV",
+			"DEC", "ANNUAL", "ALL" };
+	static final int ANNUAL = 12; // Index of annual totals in PERIODS
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Results for one station, C-part and scenario.
+	 */
+	static class Series {
+		final int scenario;
+		final String station;
+		final String cPart;
+		final TimeSeriesContainer tsc;
+		final List<int[]> years = new ArrayList<int[]>(); // {wy, months}
+		final List<Double> totals = new ArrayList<Double>();
+		final double[][] exceedance = new double[PERIODS.length][];
+
+		Series(int scenario, String station, String cPart, TimeSeriesContainer tsc) {
+			this.scenario = scenario;
+			this.station = station;
+			this.cPart = cPart;
+			this.tsc = tsc;
+		}
+	}
+
+	private final List<String> scenarios;
+	private final String dateRange;
+	private final File outDir;
+	private final boolean binary;
+	private final List<String> missing = new ArrayList<String>();
+
+	/**
+	 * @param scenarios
+	 *            scenario DSS files, base first
+	 * @param dateRange
+	 *            date range in format mmmyyyy-mmmyyyy
+	 * @param outDir
+	 *            directory for output files
+	 * @param binary
+	 *            true for binary output, false for CSV
+	 */
+	public PM_Batch(List<String> scenarios, String dateRange, File outDir, boolean binary) {
+		this.scenarios = scenarios;
+		this.dateRange = dateRange;
+		this.outDir = outDir;
+		this.binary = binary;
+	}
+
+	public static void main(String[] args) {
+
+		// Never open dialogs, even where a display is available
+
+		System.setProperty("java.awt.headless", "true");
+
+		boolean binary = false;
+		String dateRange = ChartPanel2.DATE_RANGE;
+		File outDir = new File(".");
+		List<String> scenarios = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-csv"))
+				binary = false;
+			else if (args[i].equals("-bin"))
+				binary = true;
+			else if (args[i].equals("-out") && (i + 1 < args.length))
+				outDir = new File(args[++i]);
+			else if (args[i].equals("-range") && (i + 1 < args.length))
+				dateRange = args[++i];
+			else if (args[i].startsWith("-")) {
+				usage();
+				return;
+			} else
+				scenarios.add(args[i]);
+		}
+		if (scenarios.isEmpty()) {
+			usage();
+			return;
+		}
+
+		int status;
+		try {
+			status = new PM_Batch(scenarios, dateRange, outDir, binary).run();
+		} catch (IOException e) {
+			log.error("Unable to write output: " + e.getMessage());
+			status = 1;
+		} finally {
+			HecDssPool.getInstance().closeAll();
+		}
+		System.exit(status);
+	}
+
+	private static void usage() {
+		System.err.println("Usage: java pm.PM_Batch [-csv | -bin] [-out dir] [-range FEB1924-SEP2003] scenario.dss ...");
+		System.exit(1);
+	}
+
+	/**
+	 * Reads, derives and writes all series, then reports what was missing.
+	 *
+	 * @return 0 if every series was read, 2 if any were missing
+	 * @throws IOException
+	 *             if the output cannot be written
+	 */
+	public int run() throws IOException {
+
+		long t0 = System.currentTimeMillis();
+		DSSGrabber1 dg = new DSSGrabber1(null);
+		dg.setDateRange(dateRange);
+
+		List<String> names = new ArrayList<String>();
+		for (int b = 0; b < ChartPanel2.bParts.length; b++)
+			for (int c = 0; c < ChartPanel2.cParts.length; c++)
+				names.add(ChartPanel2.seriesName(b, c));
+		List<String> errors = new ArrayList<String>();
+		TimeSeriesContainer[][] all = dg.getSeries(names, dateRange, scenarios, errors);
+		if (all == null)
+			throw new InterruptedIOException("Interrupted while reading scenario files");
+
+		List<Series> results = new ArrayList<Series>();
+		for (int b = 0; b < ChartPanel2.bParts.length; b++)
+			for (int c = 0; c < ChartPanel2.cParts.length; c++)
+				for (int s = 0; s < scenarios.size(); s++) {
+					TimeSeriesContainer tsc = all[b * ChartPanel2.cParts.length + c][s];
+					String label = new File(scenarios.get(s)).getName() + ": " + ChartPanel2.bParts[b] + "/"
+							+ ChartPanel2.cParts[c];
+					if ((tsc == null) || (tsc.numberValues < 1)) {
+						missing.add(label);
+						continue;
+					}
+					results.add(derive(dg, new Series(s, ChartPanel2.bParts[b], ChartPanel2.cParts[c], tsc)));
+				}
+
+		outDir.mkdirs();
+		if (binary)
+			writeBinary(results);
+		else
+			writeCsv(results);
+
+		// Summary
+
+		int expected = names.size() * scenarios.size();
+		System.out.println("Exported " + results.size() + " of " + expected + " series to " + outDir.getPath() + " in "
+				+ (System.currentTimeMillis() - t0) + " ms");
+		if (!missing.isEmpty()) {
+			System.out.println(missing.size() + " series missing:");
+			for (String m : missing)
+				System.out.println("  " + m);
+			for (String error : errors)
+				System.out.println("  " + error.trim());
+		}
+		return missing.isEmpty() ? 0 : 2;
+	}
+
+	/**
+	 * Adds water-year totals and exceedance values to a series.
+	 */
+	private static Series derive(DSSGrabber1 dg, final Series series) {
+
+		double factor = "CFS".equalsIgnoreCase(series.tsc.units) ? DSSGrabber1.CFS_2_TAF_DAY : 0;
+		StreamingAggregator.Listener listener = new StreamingAggregator.Listener() {
+			@Override
+			public void waterYear(int waterYear, double total, int months) {
+				series.years.add(new int[] { waterYear, months });
+				series.totals.add(total);
+			}
+		};
+		StreamingAggregator agg = (factor == 0) ? StreamingAggregator.sums(listener)
+				: StreamingAggregator.volumes(factor, listener);
+		agg.add(series.tsc);
+		agg.finish();
+
+		TimeSeriesContainer[][] ex = dg.getExceedanceSeries(new TimeSeriesContainer[] { series.tsc });
+		for (int m = 0; m < PERIODS.length; m++)
+			if (m != ANNUAL)
+				series.exceedance[m] = Arrays.copyOf(ex[m][0].values, ex[m][0].numberValues);
+		double[] annual = new double[series.totals.size()];
+		for (int j = 0; j < annual.length; j++)
+			annual[j] = series.totals.get(j);
+		Arrays.sort(annual);
+		series.exceedance[ANNUAL] = annual;
+		return series;
+	}
+
+	private void writeCsv(List<Series> results) throws IOException {
+
+		Writer monthly = open("monthly.csv");
+		Writer annual = open("annual.csv");
+		Writer exceedance = open("exceedance.csv");
+		try {
+			monthly.write("scenario,station,cpart,month,value\n");
+			annual.write("scenario,station,cpart,wy,total,months\n");
+			exceedance.write("scenario,station,cpart,period,percent,value\n");
+			for (Series series : results) {
+				String key = new File(scenarios.get(series.scenario)).getName() + "," + series.station + ","
+						+ series.cPart + ",";
+				TimeSeriesContainer tsc = series.tsc;
+				for (int j = 0; j < tsc.numberValues; j++) {
+					int ym = WaterYearCalendar.yearMonth(tsc.times[j]);
+					int m = WaterYearCalendar.month(ym);
+					monthly.write(key + WaterYearCalendar.year(ym) + (m < 10 ? "-0" : "-") + m + ","
+							+ (float) tsc.values[j] + "\n");
+				}
+				for (int j = 0; j < series.years.size(); j++)
+					annual.write(key + series.years.get(j)[0] + "," + series.totals.get(j).floatValue() + ","
+							+ series.years.get(j)[1] + "\n");
+				for (int p = 0; p < PERIODS.length; p++) {
+					double[] v = series.exceedance[p];
+					for (int j = 0; j < v.length; j++)
+						exceedance.write(key + PERIODS[p] + "," + (float) percent(j, v.length) + "," + (float) v[j]
+								+ "\n");
+				}
+			}
+		} finally {
+			monthly.close();
+			annual.close();
+			exceedance.close();
+		}
+	}
+
+	private void writeBinary(List<Series> results) throws IOException {
+
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(new File(outDir, "pm_batch.bin")), 1 << 16));
+		try {
+			out.writeBytes(MAGIC);
+			out.writeInt(scenarios.size());
+			for (String s : scenarios)
+				out.writeUTF(new File(s).getName());
+			out.writeInt(results.size());
+			for (Series series : results) {
+				TimeSeriesContainer tsc = series.tsc;
+				out.writeInt(series.scenario);
+				out.writeUTF(series.station);
+				out.writeUTF(series.cPart);
+				out.writeUTF(tsc.units == null ? "" : tsc.units);
+				out.writeInt(tsc.numberValues);
+				for (int j = 0; j < tsc.numberValues; j++) {
+					out.writeInt(tsc.times[j]);
+					out.writeFloat((float) tsc.values[j]);
+				}
+				out.writeInt(series.years.size());
+				for (int j = 0; j < series.years.size(); j++) {
+					out.writeInt(series.years.get(j)[0]);
+					out.writeFloat(series.totals.get(j).floatValue());
+					out.writeByte(series.years.get(j)[1]);
+				}
+				for (double[] v : series.exceedance) {
+					out.writeInt(v.length);
+					for (double x : v)
+						out.writeFloat((float) x);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return percent of time the j-th smallest of n values is exceeded, as
+	 *         plotted by ChartPanel2
+	 */
+	static double percent(int j, int n) {
+		return n > 1 ? 100.0 - 100.0 * j / (n - 1) : 100.0;
+	}
+
+	private Writer open(String name) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(outDir, name)), UTF8), 1 << 16);
+	}
+}
@@ -2,6 +2,8 @@ package pm;
 
 import java.awt.BorderLayout;
 import java.awt.Component;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -32,6 +34,16 @@ public class PM_Demo {
 		tp.add("SWP", p2);
 
 		f.add(tp);
+
+		// Release pooled DSS files when the window goes away
+
+		f.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				HecDssPool.getInstance().closeAll();
+			}
+		});
+
 		f.pack();
 		f.setVisible(true);
 
@@ -62,10 +62,7 @@ public class PM_Panel extends JPanel implements ActionListener, ChangeListener {
 		rb2.addActionListener(this);
 		h.add(rb2);
 
-		String[] bParts = { "CARRPP", "CVPSANLUISPP", "FOLSOMPP", "KESWICKPP", "NIMBUSPP", "ONEILPP", "SHASTAPP",
-				"SPRINGCREEKPP", "TRINITYPP" };
-
-		sList = new JComboBox<String>(bParts);
+		sList = new JComboBox<String>(ChartPanel2.bParts);
 		sList.setSelectedIndex(0);
 		sList.setEnabled(true);
 		sList.addActionListener(this);
@@ -76,9 +73,7 @@ public class PM_Panel extends JPanel implements ActionListener, ChangeListener {
 
 		h.add(new JLabel("  C-PART: "));
 
-		String[] cParts = { "ENERGY", "FORGONE", "RELEASE", "SPILL" };
-
-		cList = new JComboBox<String>(cParts);
+		cList = new JComboBox<String>(ChartPanel2.cParts);
 		cList.setSelectedIndex(0);
 		cList.setEnabled(true);
 		cList.addActionListener(this);
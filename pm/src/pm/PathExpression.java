@@ -0,0 +1,261 @@
+package pm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * Compiled dataset name expression, such as "C_SAC041/FLOW-CHANNEL" or
+ * "D_A+0.5*D_B - D_C(-1)". An expression is a list of terms separated by "+"
+ * or " - " (a minus with spaces on both sides, since names may contain "-").
+ * Each term is a name, optionally preceded by "-" (negate) and a scale factor
+ * ("0.5*"), and optionally followed by a time shift in steps ("(-1)" for the
+ * previous step's value). What a name refers to is up to the caller: for
+ * DSSGrabber1 it is B/C or B/C/F, for ResultUtils a B-part.
+ * <p>
+ * Expressions are parsed once and cached. evaluate() combines the records for
+ * the terms in a single pass, matching their values by time.
+ */
+public final class PathExpression {
+
+	private static final ConcurrentMap<String, PathExpression> compiled = new ConcurrentHashMap<String, PathExpression>();
+
+	private static final Pattern SCALE = Pattern.compile("^(\\d+(?:\\.\\d*)?|\\.\\d+)\\s*\\*\\s*");
+	private static final Pattern SHIFT = Pattern.compile("\\s*\\(\\s*([+-]?\\d+)\\s*\\)$");
+
+	/**
+	 * One term: coefficient * name shifted by a number of steps.
+	 */
+	public static final class Term {
+		private final String name;
+		private final double coefficient;
+		private final int shift;
+
+		Term(String name, double coefficient, int shift) {
+			this.name = name;
+			this.coefficient = coefficient;
+			this.shift = shift;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public double getCoefficient() {
+			return coefficient;
+		}
+
+		/**
+		 * @return shift in time steps; the value at step k is taken from step
+		 *         k + shift, so -1 takes the previous step's value
+		 */
+		public int getShift() {
+			return shift;
+		}
+	}
+
+	private final String expression;
+	private final List<Term> terms;
+
+	private PathExpression(String expression, List<Term> terms) {
+		this.expression = expression;
+		this.terms = Collections.unmodifiableList(terms);
+	}
+
+	/**
+	 * Gets the compiled form of an expression, parsing it on first use.
+	 *
+	 * @param expression
+	 *            dataset name expression
+	 * @return compiled expression
+	 * @throws IllegalArgumentException
+	 *             if a term is empty or malformed
+	 */
+	public static PathExpression compile(String expression) {
+		PathExpression e = compiled.get(expression);
+		if (e == null) {
+			e = parse(expression);
+			PathExpression old = compiled.putIfAbsent(expression, e);
+			if (old != null)
+				e = old;
+		}
+		return e;
+	}
+
+	private static PathExpression parse(String expression) {
+
+		List<Term> terms = new ArrayList<Term>();
+		boolean negate = false;
+		int pos = 0;
+		while (true) {
+			int plus = indexOfPlus(expression, pos);
+			int minus = expression.indexOf(" - ", pos);
+			int end;
+			int next;
+			boolean nextNegate;
+			if ((minus >= 0) && ((plus < 0) || (minus < plus))) {
+				end = minus;
+				next = minus + 3;
+				nextNegate = true;
+			} else if (plus >= 0) {
+				end = plus;
+				next = plus + 1;
+				nextNegate = false;
+			} else {
+				end = expression.length();
+				next = -1;
+				nextNegate = false;
+			}
+			terms.add(parseTerm(expression, expression.substring(pos, end), negate));
+			if (next < 0)
+				break;
+			pos = next;
+			negate = nextNegate;
+		}
+		return new PathExpression(expression, terms);
+	}
+
+	/**
+	 * @return index of the first "+" at or after pos that is not inside
+	 *         parentheses (as in a shift "(+1)"), or -1
+	 */
+	private static int indexOfPlus(String expression, int pos) {
+		int depth = 0;
+		for (int i = pos; i < expression.length(); i++) {
+			char ch = expression.charAt(i);
+			if (ch == '(')
+				depth++;
+			else if (ch == ')')
+				depth = Math.max(0, depth - 1);
+			else if ((ch == '+') && (depth == 0))
+				return i;
+		}
+		return -1;
+	}
+
+	private static Term parseTerm(String expression, String s, boolean negate) {
+
+		String t = s.trim();
+		while (t.startsWith("-")) {
+			negate = !negate;
+			t = t.substring(1).trim();
+		}
+
+		double coefficient = 1.0;
+		Matcher m = SCALE.matcher(t);
+		if (m.find()) {
+			coefficient = Double.parseDouble(m.group(1));
+			t = t.substring(m.end());
+		}
+
+		int shift = 0;
+		m = SHIFT.matcher(t);
+		if (m.find()) {
+			shift = Integer.parseInt(m.group(1).startsWith("+") ? m.group(1).substring(1) : m.group(1));
+			t = t.substring(0, m.start());
+		}
+
+		t = t.trim();
+		if (t.isEmpty() || (t.indexOf('*') >= 0) || (t.indexOf('(') >= 0))
+			throw new IllegalArgumentException("Invalid term \"" + s + "\" in " + expression);
+		return new Term(t, negate ? -coefficient : coefficient, shift);
+	}
+
+	public List<Term> getTerms() {
+		return terms;
+	}
+
+	public int size() {
+		return terms.size();
+	}
+
+	/**
+	 * @return true if the expression is a single unscaled, unshifted name
+	 */
+	public boolean isSimple() {
+		Term t = terms.get(0);
+		return (terms.size() == 1) && (t.coefficient == 1.0) && (t.shift == 0);
+	}
+
+	/**
+	 * Combines records read for each term. Records are aligned on their
+	 * times, which must be ascending, in a single merge pass: the result has
+	 * the times of the first record at which every term has a value. A
+	 * term's shift counts steps of its own record, so with a shift of -1 the
+	 * value is taken from the record's entry before the one at that time.
+	 *
+	 * @param records
+	 *            one record per term; the first must not be null, others may
+	 *            be null if missing, and are then left out
+	 * @return new series with the combined values
+	 */
+	public TimeSeriesContainer evaluate(TimeSeriesContainer[] records) {
+
+		TimeSeriesContainer first = records[0];
+		int count = 0;
+		TimeSeriesContainer[] r = new TimeSeriesContainer[terms.size()];
+		int[] shift = new int[terms.size()];
+		double[] c = new double[terms.size()];
+		for (int i = 0; i < terms.size(); i++) {
+			if (records[i] == null)
+				continue;
+			r[count] = records[i];
+			shift[count] = terms.get(i).shift;
+			c[count] = terms.get(i).coefficient;
+			count++;
+		}
+
+		int[] times = new int[Math.max(0, first.numberValues)];
+		double[] out = new double[times.length];
+		int[] pos = new int[count]; // Entry of each record at or after the time
+		int n = 0;
+		for (int j = 0; j < first.numberValues; j++) {
+			int t = first.times[j];
+			double sum = 0;
+			boolean all = true;
+			for (int i = 0; (i < count) && all; i++) {
+				int[] ti = r[i].times;
+				int p = pos[i];
+				while ((p < r[i].numberValues) && (ti[p] < t))
+					p++;
+				pos[i] = p;
+				int k = p + shift[i];
+				if ((p < r[i].numberValues) && (ti[p] == t) && (k >= 0) && (k < r[i].numberValues))
+					sum += c[i] * r[i].values[k];
+				else
+					all = false;
+			}
+			if (all) {
+				times[n] = t;
+				out[n++] = sum;
+			}
+		}
+
+		TimeSeriesContainer result = new TimeSeriesContainer();
+		result.fullName = first.fullName;
+		result.fileName = first.fileName;
+		result.units = first.units;
+		result.type = first.type;
+		result.interval = first.interval;
+		result.times = (n == times.length) ? times : Arrays.copyOf(times, n);
+		result.values = (n == out.length) ? out : Arrays.copyOf(out, n);
+		result.numberValues = n;
+		if (n > 0) {
+			result.startTime = result.times[0];
+			result.endTime = result.times[n - 1];
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+}
@@ -0,0 +1,290 @@
+package pm;
+
+import java.lang.management.ManagementFactory;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Timing and throughput counters for each stage of the DSS read and chart
+ * pipeline. Each stage keeps a call count, total and maximum time, values and
+ * bytes processed, and a latency histogram with power-of-two buckets (bucket k
+ * holds calls taking [2^k, 2^(k+1)) nanoseconds). Recording is lock-free and
+ * cheap enough to leave on.
+ * <p>
+ * Every stage is registered as a JMX MBean (pm:type=PipelineMetrics,stage=...)
+ * on first use. Setting the system property pm.metrics.logSeconds to a period
+ * also writes a summary of all stages to the log at that interval.
+ * <p>
+ * Typical usage:
+ *
+ * <pre>
+ * long t0 = System.nanoTime();
+ * ...
+ * PipelineMetrics.record(PipelineMetrics.Stage.READ, t0, n, 12L * n);
+ * </pre>
+ */
+public final class PipelineMetrics {
+
+	static Logger log = Logger.getLogger(PipelineMetrics.class.getName());
+
+	static final int BUCKETS = 40; // Up to 2^40 ns, about 18 minutes
+
+	/**
+	 * Pipeline stages, roughly in the order data passes through them.
+	 */
+	public enum Stage {
+		OPEN, // Opening a scenario file
+		CATALOG, // Reading and indexing a file's catalog
+		READ, // Reading one record
+		SUM, // Adding the records of a summed dataset name
+		TRIM, // Trimming a series to the date range
+		CONVERT, // CFS/TAF conversion and annual totals
+		EXCEEDANCE, // Bucketing and sorting for exceedance
+		CHART_BUILD // Building chart series from results
+	}
+
+	/**
+	 * JMX view of one stage.
+	 */
+	public interface StageMetricsMBean {
+		long getCount();
+
+		long getValues();
+
+		long getBytes();
+
+		double getTotalMillis();
+
+		double getMeanMicros();
+
+		double getMaxMicros();
+
+		double getMedianMicros();
+
+		double getP99Micros();
+
+		long[] getHistogram();
+
+		void reset();
+	}
+
+	/**
+	 * Counters for one stage.
+	 */
+	public static class StageMetrics implements StageMetricsMBean {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder values = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+		private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+		StageMetrics() {
+			for (int k = 0; k < BUCKETS; k++)
+				histogram[k] = new LongAdder();
+		}
+
+		void add(long elapsed, long n, long b) {
+			if (elapsed < 0)
+				elapsed = 0;
+			count.increment();
+			nanos.add(elapsed);
+			values.add(n);
+			bytes.add(b);
+			histogram[Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(elapsed | 1))].increment();
+			long m = max.get();
+			while ((elapsed > m) && !max.compareAndSet(m, elapsed))
+				m = max.get();
+		}
+
+		@Override
+		public long getCount() {
+			return count.sum();
+		}
+
+		@Override
+		public long getValues() {
+			return values.sum();
+		}
+
+		@Override
+		public long getBytes() {
+			return bytes.sum();
+		}
+
+		@Override
+		public double getTotalMillis() {
+			return nanos.sum() / 1e6;
+		}
+
+		@Override
+		public double getMeanMicros() {
+			long n = count.sum();
+			return n == 0 ? 0 : nanos.sum() / 1e3 / n;
+		}
+
+		@Override
+		public double getMaxMicros() {
+			return max.get() / 1e3;
+		}
+
+		@Override
+		public double getMedianMicros() {
+			return percentileMicros(0.5);
+		}
+
+		@Override
+		public double getP99Micros() {
+			return percentileMicros(0.99);
+		}
+
+		@Override
+		public long[] getHistogram() {
+			long[] h = new long[BUCKETS];
+			for (int k = 0; k < BUCKETS; k++)
+				h[k] = histogram[k].sum();
+			return h;
+		}
+
+		@Override
+		public void reset() {
+			count.reset();
+			nanos.reset();
+			values.reset();
+			bytes.reset();
+			max.set(0);
+			for (LongAdder a : histogram)
+				a.reset();
+		}
+
+		/**
+		 * @return upper bound of the histogram bucket holding the given
+		 *         fraction of calls, in microseconds
+		 */
+		double percentileMicros(double fraction) {
+			long[] h = getHistogram();
+			long total = 0;
+			for (long c : h)
+				total += c;
+			if (total == 0)
+				return 0;
+			long target = (long) Math.ceil(fraction * total);
+			long seen = 0;
+			for (int k = 0; k < BUCKETS; k++) {
+				seen += h[k];
+				if (seen >= target)
+					return Math.min((double) (2L << k), max.get()) / 1e3;
+			}
+			return getMaxMicros();
+		}
+
+		String summary() {
+			return String.format("count=%d mean=%.1fus p50<=%.1fus p99<=%.1fus max=%.1fus total=%.1fms values=%d bytes=%d",
+					getCount(), getMeanMicros(), getMedianMicros(), getP99Micros(), getMaxMicros(), getTotalMillis(),
+					getValues(), getBytes());
+		}
+	}
+
+	private static final StageMetrics[] stages = new StageMetrics[Stage.values().length];
+	private static Timer logTimer;
+
+	static {
+		for (Stage s : Stage.values())
+			stages[s.ordinal()] = new StageMetrics();
+		register();
+		scheduleLogging();
+	}
+
+	private PipelineMetrics() {
+	}
+
+	/**
+	 * Records one call of a stage.
+	 *
+	 * @param stage
+	 *            stage
+	 * @param startNanos
+	 *            System.nanoTime() at the start of the call
+	 * @param values
+	 *            number of values processed
+	 * @param bytes
+	 *            number of bytes processed
+	 */
+	public static void record(Stage stage, long startNanos, long values, long bytes) {
+		stages[stage.ordinal()].add(System.nanoTime() - startNanos, values, bytes);
+	}
+
+	/**
+	 * Records one call of a stage that works on values (8 bytes each).
+	 */
+	public static void record(Stage stage, long startNanos, long values) {
+		record(stage, startNanos, values, 8L * values);
+	}
+
+	/**
+	 * @return counters for a stage
+	 */
+	public static StageMetrics get(Stage stage) {
+		return stages[stage.ordinal()];
+	}
+
+	/**
+	 * Clears all counters.
+	 */
+	public static void reset() {
+		for (StageMetrics m : stages)
+			m.reset();
+	}
+
+	/**
+	 * Writes a line per stage that has been called to the log.
+	 */
+	public static void logSummary() {
+		for (Stage s : Stage.values()) {
+			StageMetrics m = stages[s.ordinal()];
+			if (m.getCount() > 0)
+				log.info("Pipeline " + s + ": " + m.summary());
+		}
+	}
+
+	private static void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (Stage s : Stage.values()) {
+				ObjectName name = new ObjectName("pm:type=PipelineMetrics,stage=" + s);
+				if (!server.isRegistered(name))
+					server.registerMBean(new StandardMBean(stages[s.ordinal()], StageMetricsMBean.class), name);
+			}
+		} catch (Exception e) {
+			log.debug("Unable to register pipeline metrics: " + e.getMessage());
+		}
+	}
+
+	private static void scheduleLogging() {
+		long seconds = 0;
+		try {
+			String prop = System.getProperty("pm.metrics.logSeconds");
+			if (prop != null)
+				seconds = Long.parseLong(prop.trim());
+		} catch (NumberFormatException e) {
+			log.debug(e.getMessage());
+		}
+		if (seconds <= 0)
+			return;
+		logTimer = new Timer("PipelineMetrics log", true);
+		logTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				logSummary();
+			}
+		}, seconds * 1000, seconds * 1000);
+	}
+}
@@ -0,0 +1,284 @@
+package pm;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Mergeable streaming quantile sketch in the style of KLL (Karnin, Lang and
+ * Liberty). Values are kept in a stack of compactors; when a level fills, it is
+ * sorted and every other value is promoted to the next level with twice the
+ * weight. Memory is about 3k values however many are added, and the rank error
+ * of a quantile is about 1.3% for k = 200 (see getNormalizedRankError).
+ * Sketches built separately (e.g. one per scenario or ensemble member) can be
+ * merged.
+ * <p>
+ * The minimum and maximum are kept exactly. Which half a compaction keeps is
+ * chosen by a generator with a fixed seed, so the same input always gives the
+ * same sketch. Not thread-safe.
+ */
+public class QuantileSketch {
+
+	public static final int DEFAULT_K = 200;
+	static final int MIN_WIDTH = 8; // Smallest capacity of any level
+	static final double DECAY = 2.0 / 3.0; // Capacity ratio between levels
+
+	private final int k;
+	private double[][] levels = new double[1][];
+	private int[] sizes = new int[1];
+	private long seed = 0x9E3779B97F4A7C15L; // Coin for compaction
+	private long count;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+
+	/**
+	 * @param k
+	 *            accuracy parameter; larger is more accurate and uses more
+	 *            memory
+	 */
+	public QuantileSketch(int k) {
+		if (k < MIN_WIDTH)
+			throw new IllegalArgumentException("k must be at least " + MIN_WIDTH);
+		this.k = k;
+		levels[0] = new double[capacity(0)];
+	}
+
+	public QuantileSketch() {
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * @param k
+	 *            accuracy parameter
+	 * @return approximate normalized rank error of a single quantile, e.g.
+	 *         0.013 for k = 200
+	 */
+	public static double getNormalizedRankError(int k) {
+		return 2.296 / Math.pow(k, 0.9723);
+	}
+
+	/**
+	 * @param error
+	 *            acceptable normalized rank error, e.g. 0.01 for 1%
+	 * @return smallest k giving that error
+	 */
+	public static int kForError(double error) {
+		int k = MIN_WIDTH;
+		while (getNormalizedRankError(k) > error)
+			k++;
+		return k;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * @return number of values added (including through merges)
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * Adds a value. NaN values are ignored.
+	 */
+	public void update(double value) {
+		if (Double.isNaN(value))
+			return;
+		if (count == 0) {
+			min = value;
+			max = value;
+		} else {
+			if (value < min)
+				min = value;
+			if (value > max)
+				max = value;
+		}
+		count++;
+		if (sizes[0] == levels[0].length)
+			levels[0] = Arrays.copyOf(levels[0], 2 * levels[0].length);
+		levels[0][sizes[0]++] = value;
+		compress();
+	}
+
+	/**
+	 * Adds a range of values.
+	 */
+	public void update(double[] values, int offset, int length) {
+		for (int j = offset; j < offset + length; j++)
+			update(values[j]);
+	}
+
+	/**
+	 * Adds another sketch's values to this one. The other sketch is not
+	 * changed. Sketches with different k may be merged; the result keeps this
+	 * sketch's k.
+	 *
+	 * @param other
+	 *            sketch to merge in
+	 */
+	public void merge(QuantileSketch other) {
+		if (other.count == 0)
+			return;
+		if (count == 0) {
+			min = other.min;
+			max = other.max;
+		} else {
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+		}
+		count += other.count;
+		while (levels.length < other.levels.length)
+			addLevel();
+		for (int h = 0; h < other.levels.length; h++) {
+			int n = sizes[h] + other.sizes[h];
+			if (levels[h].length < n)
+				levels[h] = Arrays.copyOf(levels[h], n);
+			System.arraycopy(other.levels[h], 0, levels[h], sizes[h], other.sizes[h]);
+			sizes[h] = n;
+		}
+		compress();
+	}
+
+	/**
+	 * @param fraction
+	 *            normalized rank, 0 for the minimum to 1 for the maximum
+	 * @return approximate value with that rank, or NaN if the sketch is empty
+	 */
+	public double getQuantile(double fraction) {
+		if (count == 0)
+			return Double.NaN;
+		if (fraction <= 0)
+			return min;
+		if (fraction >= 1)
+			return max;
+		return getQuantiles(new double[] { fraction })[0];
+	}
+
+	/**
+	 * @param fractions
+	 *            normalized ranks, each from 0 to 1
+	 * @return approximate value at each rank (NaN if the sketch is empty)
+	 */
+	public double[] getQuantiles(double[] fractions) {
+
+		double[] result = new double[fractions.length];
+		if (count == 0) {
+			Arrays.fill(result, Double.NaN);
+			return result;
+		}
+
+		// Gather retained values with their weights, sorted by value
+
+		int retained = 0;
+		for (int h = 0; h < levels.length; h++)
+			retained += sizes[h];
+		double[] v = new double[retained];
+		long[] w = new long[retained];
+		int p = 0;
+		for (int h = 0; h < levels.length; h++) {
+			Arrays.sort(levels[h], 0, sizes[h]);
+			for (int j = 0; j < sizes[h]; j++) {
+				v[p] = levels[h][j];
+				w[p++] = 1L << h;
+			}
+		}
+		Integer[] order = new Integer[retained];
+		for (int j = 0; j < retained; j++)
+			order[j] = j;
+		final double[] values = v;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(values[a], values[b]);
+			}
+		});
+		long[] cumulative = new long[retained];
+		long total = 0;
+		for (int j = 0; j < retained; j++) {
+			total += w[order[j]];
+			cumulative[j] = total;
+		}
+
+		for (int i = 0; i < fractions.length; i++) {
+			double f = fractions[i];
+			if (f <= 0)
+				result[i] = min;
+			else if (f >= 1)
+				result[i] = max;
+			else {
+				long target = (long) Math.ceil(f * total);
+				int j = Arrays.binarySearch(cumulative, target);
+				if (j < 0)
+					j = -j - 1;
+				result[i] = v[order[Math.min(j, retained - 1)]];
+			}
+		}
+		return result;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	private int capacity(int h) {
+		int depth = levels.length - 1 - h;
+		return Math.max(MIN_WIDTH, (int) Math.ceil(k * Math.pow(DECAY, depth)));
+	}
+
+	private void addLevel() {
+		int n = levels.length;
+		levels = Arrays.copyOf(levels, n + 1);
+		sizes = Arrays.copyOf(sizes, n + 1);
+		levels[n] = new double[MIN_WIDTH];
+	}
+
+	/**
+	 * @return 0 or 1 from a fixed-seed xorshift generator
+	 */
+	private int coin() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 7;
+		seed ^= seed << 17;
+		return (int) (seed >>> 63);
+	}
+
+	/**
+	 * Compacts full levels, lowest first, until every level is within its
+	 * capacity.
+	 */
+	private void compress() {
+		for (int h = 0; h < levels.length; h++) {
+			if (sizes[h] < capacity(h))
+				continue;
+			if (h == levels.length - 1)
+				addLevel();
+
+			// Sort the level and promote every other value; an odd value out
+			// stays behind
+
+			double[] level = levels[h];
+			int n = sizes[h];
+			Arrays.sort(level, 0, n);
+			int stay = n % 2;
+			int offset = stay + coin();
+			int promoted = (n - stay) / 2;
+
+			int up = sizes[h + 1];
+			if (levels[h + 1].length < up + promoted)
+				levels[h + 1] = Arrays.copyOf(levels[h + 1], Math.max(2 * levels[h + 1].length, up + promoted));
+			for (int j = offset; j < n; j += 2)
+				levels[h + 1][up++] = level[j];
+			sizes[h + 1] = up;
+			sizes[h] = stay; // Smallest value (level[0]) stays if n is odd
+		}
+	}
+}
@@ -257,21 +257,30 @@ public class ResultUtils implements ChangeListener {
 			ArrayList<PathnameMap> pathname_maps, int group_no) {
 		if (calculate_dts) {
 			try {
-				// FIXME: add expression parser to enable any expression
+				// B-part is an expression of variable names - see
+				// PathExpression
 				String bpart = path.split("/")[2];
-				String[] vars = bpart.split("\\+");
+				PathExpression expr = PathExpression.compile(bpart);
 				DataReference ref = null;
-				for (String varname : vars) {
+				for (PathExpression.Term term : expr.getTerms()) {
+					if (term.getShift() != 0) {
+						throw new RuntimeException("Time shifts are not supported in " + path);
+					}
 					DataReference xref = null;
-					String varPath = createPathFromVarname(path, varname);
+					String varPath = createPathFromVarname(path, term.getName());
 					xref = getReference(group, varPath, false, pathname_maps, group_no);
 					if (xref == null) {
 						throw new RuntimeException("Aborting calculation of " + path + " due to previous path missing");
 					}
+					double k = term.getCoefficient();
 					if (ref == null) {
-						ref = xref;
-					} else {
+						ref = (k == 1.0) ? xref : xref.__mul__(k);
+					} else if (k == 1.0) {
 						ref = ref.__add__(xref);
+					} else if (k == -1.0) {
+						ref = ref.__sub__(xref);
+					} else {
+						ref = ref.__add__(xref.__mul__(k));
 					}
 				}
 				return ref;
@@ -461,6 +470,10 @@ public class ResultUtils implements ChangeListener {
 		return table5.length;
 	}
 
+	public boolean hasLookups5() {
+		return table5 != null;
+	}
+
 	public String getLookups(int i, int j) {
 		return lookups[i][j];
 	}
@@ -469,6 +482,10 @@ public class ResultUtils implements ChangeListener {
 		return lookups.length;
 	}
 
+	public boolean hasLookups() {
+		return lookups != null;
+	}
+
 	public Project getProject() {
 		return project;
 	}
@@ -0,0 +1,176 @@
+package pm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Settings of a CalLite scenario, read from its .cls file. Each line of a .cls
+ * file is a "name|value|..." entry; the file is parsed once into an immutable
+ * map of names to values (the first entry wins if a name is repeated), and
+ * the result is cached by path and modification time, so it is re-read only
+ * if the file changes.
+ * <p>
+ * Some variables exist only if the scenario was run with a particular option;
+ * missingReason says why such a variable is absent from the scenario's
+ * results.
+ */
+public final class ScenarioMetadata {
+
+	static Logger log = Logger.getLogger(ScenarioMetadata.class.getName());
+
+	static final String DYNAMIC_SJR = "Dynamic_SJR";
+	static final String ANTIOCH_CHIPPS = "CkbReg_AN"; // D-1485 Fish and Wildlife
+	static final String LVE = "fac_ckb3"; // Los Vaqueros Enlargement
+
+	// Variables (B/C) written only when the option is on
+
+	static final Set<String> DYNAMIC_SJR_VARIABLES = setOf("S_MELON/STORAGE", "S_PEDRO/STORAGE", "S_MCLRE/STORAGE",
+			"S_MLRTN/STORAGE", "C_STANRIPN/FLOW-CHANNEL", "C_TUOL/FLOW-CHANNEL", "C_MERCED2/FLOW-CHANNEL",
+			"C_SJRMS/FLOW-CHANNEL", "D_STANRIPN/FLOW-DELIVERY", "D_STANGDWN/FLOW-DELIVERY", "D_TUOL/FLOW-DELIVERY",
+			"D_TUOL1B/FLOW-DELIVERY", "D_TUOL2/FLOW-DELIVERY", "D_MERCED1/FLOW-DELIVERY", "D_MERCED2/FLOW-DELIVERY",
+			"D_MDRCNL/FLOW-DELIVERY", "D_FKCNL/FLOW-DELIVERY");
+	static final Set<String> ANTIOCH_CHIPPS_VARIABLES = setOf("AN_EC_STD/SALINITY", "CH_EC_STD/SALINITY");
+	static final Set<String> LVE_VARIABLES = setOf("S422/STORAGE", "WQ408_OR_/SALINITY", "WQ408_VC_/SALINITY",
+			"WQ408_RS_/SALINITY", "C422_FILL_CC/FLOW-CHANNEL", "D420/FLOW-DELIVERY", "D408_OR/FLOW-DELIVERY",
+			"D408_VC/FLOW-DELIVERY", "D408_RS/FLOW-DELIVERY", "WQ420/SALINITY");
+
+	private static final Charset CLS_CHARSET = Charset.forName("ISO-8859-1");
+	private static final ConcurrentMap<String, ScenarioMetadata> cache =
+			new ConcurrentHashMap<String, ScenarioMetadata>();
+
+	private final long lastModified;
+	private final Map<String, String> values;
+
+	private ScenarioMetadata(long lastModified, Map<String, String> values) {
+		this.lastModified = lastModified;
+		this.values = Collections.unmodifiableMap(values);
+	}
+
+	private static Set<String> setOf(String... names) {
+		return Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(names)));
+	}
+
+	/**
+	 * Gets the settings of the scenario that produced a DV file.
+	 *
+	 * @param dvFilename
+	 *            name of the scenario's DV.DSS file; the .cls file is the same
+	 *            name without "_DV.DSS"
+	 * @return settings; empty if the .cls file cannot be read
+	 */
+	public static ScenarioMetadata forDvFile(String dvFilename) {
+		int end = Math.max(0, dvFilename.length() - 7);
+		return forClsFile(dvFilename.substring(0, end) + ".cls");
+	}
+
+	/**
+	 * Gets the settings in a .cls file, parsing it only if it has not been
+	 * parsed before or has changed since.
+	 *
+	 * @param clsFilename
+	 *            name of .cls file
+	 * @return settings; empty if the file cannot be read
+	 */
+	public static ScenarioMetadata forClsFile(String clsFilename) {
+
+		File f = new File(clsFilename);
+		String key = f.getAbsolutePath();
+		long mtime = f.lastModified(); // 0 if missing
+		ScenarioMetadata m = cache.get(key);
+		if ((m == null) || (m.lastModified != mtime)) {
+			m = new ScenarioMetadata(mtime, parse(f));
+			cache.put(key, m);
+		}
+		return m;
+	}
+
+	private static Map<String, String> parse(File f) {
+
+		Map<String, String> values = new HashMap<String, String>();
+		try {
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(new FileInputStream(f.getAbsolutePath()), CLS_CHARSET));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					int bar = line.indexOf('|');
+					if (bar <= 0)
+						continue;
+					int next = line.indexOf('|', bar + 1);
+					String name = line.substring(0, bar);
+					if (!values.containsKey(name))
+						values.put(name, line.substring(bar + 1, next < 0 ? line.length() : next));
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			log.info(f.getName() + " not openable - scenario options assumed off");
+		}
+		return values;
+	}
+
+	/**
+	 * @param name
+	 *            setting name, e.g. "Dynamic_SJR"
+	 * @return value of the setting, or null if it is not in the file
+	 */
+	public String get(String name) {
+		return values.get(name);
+	}
+
+	/**
+	 * @param name
+	 *            setting name
+	 * @return true if the setting is "true"
+	 */
+	public boolean isOn(String name) {
+		return "true".equals(values.get(name));
+	}
+
+	public boolean isDynamicSJR() {
+		return isOn(DYNAMIC_SJR);
+	}
+
+	public boolean isAntiochChipps() {
+		return isOn(ANTIOCH_CHIPPS);
+	}
+
+	public boolean isLVE() {
+		return isOn(LVE);
+	}
+
+	/**
+	 * Explains a variable missing from the scenario's results by an option the
+	 * scenario was run without.
+	 *
+	 * @param variable
+	 *            B/C name of the variable, e.g. "S_MELON/STORAGE"
+	 * @return reason, or null if the variable does not depend on an option
+	 *         that is off
+	 */
+	public String missingReason(String variable) {
+		if (!isDynamicSJR() && DYNAMIC_SJR_VARIABLES.contains(variable))
+			return "The selected scenario was not run using dynamic SJR simulation.";
+		if (!isAntiochChipps() && ANTIOCH_CHIPPS_VARIABLES.contains(variable))
+			return "The selected scenario was not run with D-1485 Fish and Wildlife (at Antioch and Chipps)"
+					+ " regulations.";
+		if (!isLVE() && LVE_VARIABLES.contains(variable))
+			return "The selected scenario was not run with Los Vaqueros Enlargement.";
+		return null;
+	}
+}
@@ -0,0 +1,201 @@
+package pm;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * Memory-bounded cache of series read by DSSGrabber1, after summation but
+ * before trimming, so one entry serves every date range. Entries are keyed by
+ * DSS file (path and modification time) and dataset name expression, and are
+ * evicted least-recently-used first once the byte budget is exceeded. The
+ * budget can be set with the system property pm.seriesCache.maxBytes (0
+ * disables caching).
+ * <p>
+ * Series are stored and returned without copying and must not be changed.
+ * DSSGrabber1 trims them into new series for its callers, which may change
+ * those (e.g. calcTAFforCFS converts values in place).
+ */
+public class SeriesCache {
+
+	static Logger log = Logger.getLogger(SeriesCache.class.getName());
+	static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	static final int ENTRY_OVERHEAD = 256; // Rough size of container and key
+
+	private static SeriesCache instance;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+	private long maxBytes;
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private static class Entry {
+		final TimeSeriesContainer tsc;
+		final long size;
+
+		Entry(TimeSeriesContainer tsc, long size) {
+			this.tsc = tsc;
+			this.size = size;
+		}
+	}
+
+	SeriesCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the application-wide cache, creating it on first use.
+	 *
+	 * @return the shared cache
+	 */
+	public static synchronized SeriesCache getInstance() {
+		if (instance == null) {
+			long maxBytes = DEFAULT_MAX_BYTES;
+			try {
+				String prop = System.getProperty("pm.seriesCache.maxBytes");
+				if (prop != null)
+					maxBytes = Long.parseLong(prop.trim());
+			} catch (NumberFormatException e) {
+				log.debug(e.getMessage());
+			}
+			instance = new SeriesCache(maxBytes);
+		}
+		return instance;
+	}
+
+	/**
+	 * Looks up a series.
+	 *
+	 * @param dssFilename
+	 *            name of HEC DSS file
+	 * @param dssName
+	 *            dataset name expression as passed to getOneSeries
+	 * @return the cached series, not to be changed, or null if it is not
+	 *         cached
+	 */
+	public TimeSeriesContainer get(String dssFilename, String dssName) {
+
+		String key = keyFor(dssFilename, dssName);
+		synchronized (this) {
+			Entry e = entries.get(key);
+			if (e == null) {
+				misses++;
+				return null;
+			}
+			hits++;
+			return e.tsc;
+		}
+	}
+
+	/**
+	 * Stores a series, evicting least-recently-used entries as needed to stay
+	 * within the byte budget.
+	 *
+	 * @param dssFilename
+	 *            name of HEC DSS file
+	 * @param dssName
+	 *            dataset name expression as passed to getOneSeries
+	 * @param tsc
+	 *            series read, untrimmed; not to be changed afterwards
+	 */
+	public void put(String dssFilename, String dssName, TimeSeriesContainer tsc) {
+
+		if ((tsc == null) || (tsc.numberValues < 1))
+			return; // Missing records are not cached so they are reported again
+		long size = sizeOf(tsc);
+		String key = keyFor(dssFilename, dssName);
+
+		synchronized (this) {
+			if (size > maxBytes)
+				return;
+			Entry old = entries.put(key, new Entry(tsc, size));
+			if (old != null)
+				bytes -= old.size;
+			bytes += size;
+			trim();
+		}
+	}
+
+	/**
+	 * Removes all entries. Statistics are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Sets the byte budget, evicting entries if the cache is now over it.
+	 *
+	 * @param maxBytes
+	 *            approximate maximum memory used by cached series
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		trim();
+	}
+
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return one-line summary of cache use, suitable for logging
+	 */
+	public synchronized String getStats() {
+		long lookups = hits + misses;
+		return "SeriesCache: " + entries.size() + " entries, " + bytes + "/" + maxBytes + " bytes, " + hits
+				+ " hits, " + misses + " misses (" + (lookups == 0 ? 0 : 100 * hits / lookups) + "% hit), "
+				+ evictions + " evictions";
+	}
+
+	private void trim() {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while ((bytes > maxBytes) && it.hasNext()) {
+			bytes -= it.next().getValue().size;
+			it.remove();
+			evictions++;
+		}
+	}
+
+	private static String keyFor(String dssFilename, String dssName) {
+		File f = new File(dssFilename);
+		return f.getAbsolutePath() + "|" + f.lastModified() + "|" + dssName;
+	}
+
+	static long sizeOf(TimeSeriesContainer tsc) {
+		long size = ENTRY_OVERHEAD;
+		if (tsc.times != null)
+			size += 4L * tsc.times.length;
+		if (tsc.values != null)
+			size += 8L * tsc.values.length;
+		return size;
+	}
+}
@@ -0,0 +1,112 @@
+package pm;
+
+import java.util.Arrays;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * Immutable window (offset and length) onto the time and value arrays of a
+ * series. Windows are found by binary search on the times, which must be in
+ * ascending order, and share the underlying arrays, so a decoded record can
+ * back any number of date ranges without being copied or changed. Arrays are
+ * copied only when a view is turned back into a TimeSeriesContainer.
+ */
+public final class SeriesView {
+
+	private final int[] times;
+	private final double[] values;
+	private final int offset;
+	private final int length;
+
+	private SeriesView(int[] times, double[] values, int offset, int length) {
+		this.times = times;
+		this.values = values;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * @param tsc
+	 *            series with times in ascending order
+	 * @return view of the first numberValues entries of the series
+	 */
+	public static SeriesView of(TimeSeriesContainer tsc) {
+		return new SeriesView(tsc.times, tsc.values, 0, Math.max(0, tsc.numberValues));
+	}
+
+	/**
+	 * Narrows the view to a date range. As DSSGrabber1 always has, the window
+	 * runs from the first time at or after startTime up to and including the
+	 * first time after endTime (if there is one), which keeps the month
+	 * following the last September in the series.
+	 *
+	 * @param startTime
+	 *            start of date range (HEC time)
+	 * @param endTime
+	 *            end of date range (HEC time)
+	 * @return view of the values in the range
+	 */
+	public SeriesView window(int startTime, int endTime) {
+		int from = search(startTime, false); // First time >= startTime
+
+		// Up to and including the first time > endTime
+
+		int to = Math.min(search(endTime, true) + 1, offset + length);
+		return new SeriesView(times, values, from, Math.max(0, to - from));
+	}
+
+	public int size() {
+		return length;
+	}
+
+	public int getTime(int i) {
+		return times[offset + i];
+	}
+
+	public double getValue(int i) {
+		return values[offset + i];
+	}
+
+	/**
+	 * Copies the view into a new series with arrays of exactly its length.
+	 *
+	 * @param template
+	 *            series whose name, file, units, type and interval are copied
+	 * @return new series
+	 */
+	public TimeSeriesContainer toContainer(TimeSeriesContainer template) {
+		TimeSeriesContainer tsc = new TimeSeriesContainer();
+		tsc.fullName = template.fullName;
+		tsc.fileName = template.fileName;
+		tsc.units = template.units;
+		tsc.type = template.type;
+		tsc.interval = template.interval;
+		tsc.times = Arrays.copyOfRange(times, offset, offset + length);
+		tsc.values = Arrays.copyOfRange(values, offset, offset + length);
+		tsc.numberValues = length;
+		if (length > 0) {
+			tsc.startTime = tsc.times[0];
+			tsc.endTime = tsc.times[length - 1];
+		}
+		return tsc;
+	}
+
+	/**
+	 * Binary search within the view.
+	 *
+	 * @return index of the first time > t if after, otherwise of the first
+	 *         time >= t; offset + length if there is none
+	 */
+	private int search(int t, boolean after) {
+		int lo = offset;
+		int hi = offset + length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if ((times[mid] < t) || (after && (times[mid] == t)))
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,195 @@
+package pm;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * Aggregates a monthly series fed in chunks (e.g. one DSS block at a time), in
+ * constant memory however long the record is. It emits a total for each water
+ * year as the year completes and keeps per-calendar-month means and the
+ * running minimum and maximum.
+ * <p>
+ * Totals are either plain sums of the values or, as in
+ * DSSGrabber1.calcTAFforCFS, volumes: each value times the days in its month
+ * times a per-day factor. Chunks must be fed in time order.
+ * <p>
+ * Typical usage:
+ *
+ * <pre>
+ * StreamingAggregator agg = StreamingAggregator.volumes(DSSGrabber1.CFS_2_TAF_DAY, listener);
+ * for (each block)
+ * 	agg.add(block.times, block.values, 0, block.numberValues);
+ * agg.finish();
+ * </pre>
+ */
+public class StreamingAggregator {
+
+	/**
+	 * Receives water-year totals as they are completed.
+	 */
+	public interface Listener {
+		/**
+		 * @param waterYear
+		 *            USGS water year
+		 * @param total
+		 *            total for the year
+		 * @param months
+		 *            number of months in the total (less than 12 for a
+		 *            partial first or last year)
+		 */
+		void waterYear(int waterYear, double total, int months);
+	}
+
+	private final double dayFactor; // 0 for plain sums
+	private final Listener listener;
+
+	private int currentWY = Integer.MIN_VALUE;
+	private double wyTotal;
+	private int wyMonths;
+
+	private final double[] monthSums = new double[12];
+	private final int[] monthCounts = new int[12];
+	private long count;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private int minTime;
+	private int maxTime;
+
+	private StreamingAggregator(double dayFactor, Listener listener) {
+		this.dayFactor = dayFactor;
+		this.listener = listener;
+	}
+
+	/**
+	 * @param listener
+	 *            receives water-year totals; may be null
+	 * @return aggregator whose water-year totals are sums of the values
+	 */
+	public static StreamingAggregator sums(Listener listener) {
+		return new StreamingAggregator(0, listener);
+	}
+
+	/**
+	 * @param dayFactor
+	 *            conversion per day, e.g. DSSGrabber1.CFS_2_TAF_DAY
+	 * @param listener
+	 *            receives water-year totals; may be null
+	 * @return aggregator whose water-year totals are monthly volumes
+	 */
+	public static StreamingAggregator volumes(double dayFactor, Listener listener) {
+		return new StreamingAggregator(dayFactor, listener);
+	}
+
+	/**
+	 * Adds a chunk of monthly values.
+	 *
+	 * @param times
+	 *            HEC times, in ascending order and after any already added
+	 * @param values
+	 *            values
+	 * @param offset
+	 *            index of first entry to add
+	 * @param length
+	 *            number of entries to add
+	 */
+	public void add(int[] times, double[] values, int offset, int length) {
+
+		for (int j = offset; j < offset + length; j++) {
+			int ym = WaterYearCalendar.yearMonth(times[j]);
+			int wy = WaterYearCalendar.waterYear(ym);
+			if (wy != currentWY) {
+				emit();
+				currentWY = wy;
+			}
+
+			double v = values[j];
+			wyTotal += (dayFactor == 0) ? v : v * WaterYearCalendar.daysInMonth(ym) * dayFactor;
+			wyMonths++;
+
+			int m = WaterYearCalendar.month(ym) - 1;
+			monthSums[m] += v;
+			monthCounts[m]++;
+			count++;
+			if (v < min) {
+				min = v;
+				minTime = times[j];
+			}
+			if (v > max) {
+				max = v;
+				maxTime = times[j];
+			}
+		}
+	}
+
+	/**
+	 * Adds a chunk of monthly values.
+	 *
+	 * @param tsc
+	 *            series (or block of a series); numberValues entries are used
+	 */
+	public void add(TimeSeriesContainer tsc) {
+		if (tsc != null)
+			add(tsc.times, tsc.values, 0, tsc.numberValues);
+	}
+
+	/**
+	 * Emits the total for the last (possibly partial) water year. Call once
+	 * all chunks have been added.
+	 */
+	public void finish() {
+		emit();
+		currentWY = Integer.MIN_VALUE;
+	}
+
+	private void emit() {
+		if ((wyMonths > 0) && (listener != null))
+			listener.waterYear(currentWY, wyTotal, wyMonths);
+		wyTotal = 0;
+		wyMonths = 0;
+	}
+
+	/**
+	 * @return number of values added
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @param month
+	 *            1 for January to 12 for December
+	 * @return mean of the values for the calendar month, or NaN if there were
+	 *         none
+	 */
+	public double getMonthlyMean(int month) {
+		int n = monthCounts[month - 1];
+		return n == 0 ? Double.NaN : monthSums[month - 1] / n;
+	}
+
+	/**
+	 * @return smallest value so far, or NaN if none
+	 */
+	public double getMin() {
+		return count == 0 ? Double.NaN : min;
+	}
+
+	/**
+	 * @return largest value so far, or NaN if none
+	 */
+	public double getMax() {
+		return count == 0 ? Double.NaN : max;
+	}
+
+	/**
+	 * @return HEC time of the (first) smallest value
+	 */
+	public int getMinTime() {
+		return minTime;
+	}
+
+	/**
+	 * @return HEC time of the (first) largest value
+	 */
+	public int getMaxTime() {
+		return maxTime;
+	}
+}
@@ -0,0 +1,44 @@
+package pm;
+
+import java.util.List;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * Source of time series records addressed by HEC-DSS pathname. DSSGrabber1
+ * reads all scenario files through this interface, normally backed by heclib
+ * (HecDssSource). CatalogSource serves synthetic series from a .dsc catalog
+ * listing, so that loading can be exercised without the heclib native
+ * libraries.
+ * <p>
+ * Implementations need not be thread-safe; callers serialize reads of one
+ * source.
+ */
+public interface TimeSeriesSource {
+
+	/**
+	 * @return pathnames of all records in the source, one per D-part block
+	 * @throws Exception
+	 *             if the catalog cannot be read
+	 */
+	List<String> getPathnameList() throws Exception;
+
+	/**
+	 * Reads a time series record.
+	 *
+	 * @param pathname
+	 *            full HEC-DSS pathname (/A/B/C/D/E/F/)
+	 * @param readEntire
+	 *            true to read all blocks of the series regardless of the
+	 *            D-part, false to read only the block named by the D-part
+	 * @return the series, or null if there is no such record
+	 * @throws Exception
+	 *             if the record cannot be read
+	 */
+	TimeSeriesContainer get(String pathname, boolean readEntire) throws Exception;
+
+	/**
+	 * Releases the underlying file.
+	 */
+	void close();
+}
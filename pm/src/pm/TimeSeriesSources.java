@@ -0,0 +1,44 @@
+package pm;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Opens the TimeSeriesSource for a scenario file. Files named *.dsc are served
+ * by CatalogSource. DSS files are opened with heclib, unless the system
+ * property pm.source is set to "catalog", in which case the catalog of the same
+ * name next to the DSS file is used instead (e.g. for testing on machines
+ * without the heclib native libraries).
+ */
+public final class TimeSeriesSources {
+
+	static final String CATALOG = "catalog";
+	static final String CATALOG_SUFFIX = ".dsc";
+
+	private TimeSeriesSources() {
+	}
+
+	/**
+	 * @param filename
+	 *            name of scenario DSS file (or catalog)
+	 * @return open source for the file
+	 * @throws Exception
+	 *             if the file cannot be opened
+	 */
+	public static TimeSeriesSource open(String filename) throws Exception {
+
+		if (filename.toLowerCase().endsWith(CATALOG_SUFFIX))
+			return new CatalogSource(filename);
+
+		if (CATALOG.equalsIgnoreCase(System.getProperty("pm.source"))) {
+			int dot = filename.lastIndexOf('.');
+			String dsc = (dot > filename.lastIndexOf(File.separatorChar) ? filename.substring(0, dot) : filename)
+					+ CATALOG_SUFFIX;
+			if (!new File(dsc).isFile())
+				throw new FileNotFoundException("No catalog " + dsc + " for " + filename);
+			return new CatalogSource(dsc);
+		}
+
+		return new HecDssSource(filename);
+	}
+}
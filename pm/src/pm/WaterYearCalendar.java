@@ -0,0 +1,137 @@
+package pm;
+
+/**
+ * Month and water-year arithmetic on HEC times (minutes since 00:00 on 31 Dec
+ * 1899), without HecTime or Calendar objects. All methods are static and
+ * thread-safe.
+ * <p>
+ * HEC stamps monthly values at 2400 on the last day of the month, which is the
+ * same instant as 0000 on the first day of the next month. As with HecTime,
+ * such a time is treated as belonging to the earlier day, so the value for
+ * January 1930 (stamped 31JAN1930 2400) is in January.
+ * <p>
+ * Year and month are returned together as a single int, yearMonth = year * 12
+ * + (month - 1), so that a time need only be decoded once.
+ */
+public final class WaterYearCalendar {
+
+	static final int MINUTES_PER_DAY = 1440;
+	static final int EPOCH_JULIAN = 25568; // HEC day number of 01JAN1970
+
+	private static final int[] DAYS_IN_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+	private WaterYearCalendar() {
+	}
+
+	/**
+	 * @param hecMinutes
+	 *            HEC time in minutes
+	 * @return year * 12 + (month - 1) of the day containing the time, with
+	 *         2400 belonging to the day that ends then
+	 */
+	public static int yearMonth(int hecMinutes) {
+
+		// Day number (1 = 01JAN1900), then days since 01JAN1970
+
+		int julian = (int) Math.floorDiv(hecMinutes - 1L, MINUTES_PER_DAY);
+		long z = (long) (julian - EPOCH_JULIAN) + 719468;
+
+		// Civil date from day count, in 400-year eras of March-based years
+
+		long era = Math.floorDiv(z, 146097);
+		int doe = (int) (z - era * 146097);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int month = (mp < 10) ? mp + 3 : mp - 9;
+		int year = (int) (yoe + era * 400) + ((month <= 2) ? 1 : 0);
+
+		return year * 12 + month - 1;
+	}
+
+	/**
+	 * @param date
+	 *            date in HEC form, e.g. the D-part 01JAN1930
+	 * @return year * 12 + (month - 1) of the date
+	 * @throws IllegalArgumentException
+	 *             if the date cannot be parsed
+	 */
+	public static int parseYearMonth(String date) {
+		try {
+			int m = "JANFEBMARAPRMAYJUNJULAUGSEPOCTNOVDEC".indexOf(date.substring(2, 5).toUpperCase());
+			if ((m < 0) || (m % 3 != 0))
+				throw new IllegalArgumentException("Invalid month in " + date);
+			return Integer.parseInt(date.substring(5).trim()) * 12 + m / 3;
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid date " + date, e);
+		}
+	}
+
+	/**
+	 * @param yearMonth
+	 *            year * 12 + (month - 1)
+	 * @return HEC time of 2400 on the last day of the month, where HEC stamps
+	 *         monthly values
+	 */
+	public static int endOfMonth(int yearMonth) {
+
+		// Day count of the first of the next month, in March-based years
+
+		int next = yearMonth + 1;
+		int y = year(next);
+		int m = month(next);
+		if (m <= 2)
+			y--;
+		int era = Math.floorDiv(y, 400);
+		int yoe = y - era * 400;
+		int doy = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		long epochDay = (long) era * 146097 + doe - 719468;
+
+		return (int) ((epochDay + EPOCH_JULIAN) * MINUTES_PER_DAY);
+	}
+
+	/**
+	 * @param yearMonth
+	 *            as returned by yearMonth
+	 * @return calendar year
+	 */
+	public static int year(int yearMonth) {
+		return Math.floorDiv(yearMonth, 12);
+	}
+
+	/**
+	 * @param yearMonth
+	 *            as returned by yearMonth
+	 * @return month, 1 for January to 12 for December
+	 */
+	public static int month(int yearMonth) {
+		return Math.floorMod(yearMonth, 12) + 1;
+	}
+
+	/**
+	 * @param yearMonth
+	 *            as returned by yearMonth
+	 * @return USGS water year (October to September, named for the year it
+	 *         ends in)
+	 */
+	public static int waterYear(int yearMonth) {
+		return year(yearMonth + 3);
+	}
+
+	/**
+	 * @param yearMonth
+	 *            as returned by yearMonth
+	 * @return number of days in the month, allowing for leap years
+	 */
+	public static int daysInMonth(int yearMonth) {
+		int m = Math.floorMod(yearMonth, 12);
+		if (m == 1 && isLeapYear(year(yearMonth)))
+			return 29;
+		return DAYS_IN_MONTH[m];
+	}
+
+	public static boolean isLeapYear(int year) {
+		return (year % 4 == 0) && ((year % 100 != 0) || (year % 400 == 0));
+	}
+}
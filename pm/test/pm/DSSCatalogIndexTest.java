@@ -0,0 +1,156 @@
+package pm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import hec.io.TimeSeriesContainer;
+
+public class DSSCatalogIndexTest {
+
+	private File a;
+	private File b;
+
+	/**
+	 * Source that lists fixed pathnames, counting the listings and optionally
+	 * waiting for a latch first.
+	 */
+	private static class Listing implements TimeSeriesSource {
+		final List<String> pathnames;
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch proceed;
+		final AtomicInteger listings = new AtomicInteger();
+
+		Listing(CountDownLatch proceed, String... pathnames) {
+			this.proceed = proceed;
+			this.pathnames = Arrays.asList(pathnames);
+		}
+
+		@Override
+		public List<String> getPathnameList() throws Exception {
+			listings.incrementAndGet();
+			started.countDown();
+			if (proceed != null)
+				proceed.await();
+			return pathnames;
+		}
+
+		@Override
+		public TimeSeriesContainer get(String pathname, boolean readEntire) {
+			return null;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	@Before
+	public void createFiles() throws IOException {
+		a = File.createTempFile("catalog", ".dss");
+		b = File.createTempFile("catalog", ".dss");
+	}
+
+	@After
+	public void deleteFiles() {
+		DSSCatalogIndex.invalidate(a.getPath());
+		DSSCatalogIndex.invalidate(b.getPath());
+		a.delete();
+		b.delete();
+	}
+
+	@Test
+	public void findsByPartsAndKeepsFirstRecordParts() throws Exception {
+		Listing source = new Listing(null, "/CALSIM/C_SAC/FLOW-CHANNEL/01JAN1930/1MON/RUN1/",
+				"/CALSIM/C_SAC/FLOW-CHANNEL/01JAN1940/1MON/RUN1/", "/CALSIM/C_SAC/FLOW-CHANNEL/01JAN1930/1DAY/RUN1/",
+				"/CALSIM/S_SHSTA/STORAGE/01JAN1930/1MON/RUN2/", "not a pathname");
+		DSSCatalogIndex index = DSSCatalogIndex.getIndex(a.getPath(), source);
+		assertEquals(4, index.size());
+		assertEquals("CALSIM", index.getAPart());
+		assertEquals("RUN1", index.getFPart());
+		assertEquals(3, index.find("C_SAC", "FLOW-CHANNEL", "RUN1").size());
+		assertEquals(1, index.find("S_SHSTA", "STORAGE").size());
+		assertTrue(index.contains("S_SHSTA", "STORAGE", "RUN2"));
+		assertTrue(index.find("S_SHSTA", "STORAGE", "RUN1").isEmpty());
+	}
+
+	@Test
+	public void builtOncePerFileUntilModified() throws Exception {
+		Listing source = new Listing(null, "/A/B/C/01JAN1930/1MON/F/");
+		a.setLastModified(1000000000000L);
+		DSSCatalogIndex index = DSSCatalogIndex.getIndex(a.getPath(), source);
+		assertSame(index, DSSCatalogIndex.getIndex(a.getPath(), source));
+		assertEquals(1, source.listings.get());
+
+		a.setLastModified(1000000060000L);
+		DSSCatalogIndex changed = DSSCatalogIndex.getIndex(a.getPath(), source);
+		assertTrue(changed != index);
+		assertEquals(2, source.listings.get());
+	}
+
+	@Test
+	public void slowCatalogDoesNotHoldUpOtherFiles() throws Exception {
+		final CountDownLatch proceed = new CountDownLatch(1);
+		final Listing slow = new Listing(proceed, "/A/B/C/01JAN1930/1MON/F/");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Callable<DSSCatalogIndex> build = new Callable<DSSCatalogIndex>() {
+				@Override
+				public DSSCatalogIndex call() throws Exception {
+					return DSSCatalogIndex.getIndex(a.getPath(), slow);
+				}
+			};
+			Future<DSSCatalogIndex> first = executor.submit(build);
+			assertTrue(slow.started.await(10, TimeUnit.SECONDS));
+			Future<DSSCatalogIndex> second = executor.submit(build); // Waits for the first
+
+			// Another file is indexed while the slow one is still listing
+
+			Listing other = new Listing(null, "/X/Y/Z/01JAN1930/1MON/F/");
+			assertEquals(1, DSSCatalogIndex.getIndex(b.getPath(), other).size());
+
+			proceed.countDown();
+			assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+			assertEquals(1, slow.listings.get());
+		} finally {
+			proceed.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failedBuildIsRetried() throws Exception {
+		Listing failing = new Listing(null) {
+			@Override
+			public List<String> getPathnameList() throws Exception {
+				listings.incrementAndGet();
+				throw new IOException("catalog unreadable");
+			}
+		};
+		try {
+			DSSCatalogIndex.getIndex(a.getPath(), failing);
+			fail("Catalog read");
+		} catch (IOException e) {
+			assertEquals("catalog unreadable", e.getMessage());
+		}
+		Listing working = new Listing(null, "/A/B/C/01JAN1930/1MON/F/");
+		assertEquals(1, DSSCatalogIndex.getIndex(a.getPath(), working).size());
+	}
+}
@@ -0,0 +1,113 @@
+package pm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DecimatorTest {
+
+	private static double[][] line(int n, long seed) {
+		Random random = new Random(seed);
+		double[] x = new double[n];
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = i;
+			y[i] = random.nextGaussian() * 100;
+		}
+		return new double[][] { x, y };
+	}
+
+	private static boolean contains(double[][] points, double x, double y) {
+		for (int i = 0; i < points[0].length; i++)
+			if ((points[0][i] == x) && (points[1][i] == y))
+				return true;
+		return false;
+	}
+
+	@Test
+	public void smallInputIsCopied() {
+		double[][] p = line(40, 1);
+		double[][] d = Decimator.decimate(p[0], p[1], 40, 0, 39, 10);
+		assertArrayEquals(p[0], d[0], 0);
+		assertArrayEquals(p[1], d[1], 0);
+	}
+
+	@Test
+	public void keepsFirstLastMinAndMaxOfEveryColumn() {
+		int n = 10000;
+		int buckets = 100;
+		double[][] p = line(n, 2);
+		double[][] d = Decimator.decimate(p[0], p[1], n, 0, n - 1, buckets);
+		assertTrue(d[0].length <= 4 * buckets);
+
+		// Columns are 100 x values wide, the last one takes x = n - 1 as well
+
+		for (int b = 0; b < buckets; b++) {
+			int first = b * 100;
+			int last = (b == buckets - 1) ? n - 1 : first + 99;
+			int min = first;
+			int max = first;
+			for (int i = first; i <= last; i++) {
+				if (p[1][i] < p[1][min])
+					min = i;
+				if (p[1][i] > p[1][max])
+					max = i;
+			}
+			for (int i : new int[] { first, last, min, max })
+				assertTrue("column " + b + ", x " + i, contains(d, p[0][i], p[1][i]));
+		}
+	}
+
+	@Test
+	public void keepsOrderAndExtremes() {
+		int n = 5000;
+		double[][] p = line(n, 3);
+		double[][] d = Decimator.decimate(p[0], p[1], n, 0, n - 1, 50);
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			min = Math.min(min, p[1][i]);
+			max = Math.max(max, p[1][i]);
+		}
+		double dMin = Double.POSITIVE_INFINITY;
+		double dMax = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < d[0].length; i++) {
+			if (i > 0)
+				assertTrue(d[0][i - 1] < d[0][i]);
+			dMin = Math.min(dMin, d[1][i]);
+			dMax = Math.max(dMax, d[1][i]);
+		}
+		assertEquals(min, dMin, 0);
+		assertEquals(max, dMax, 0);
+	}
+
+	@Test
+	public void keepsOffScreenNeighboursOnly() {
+		int n = 10000;
+		double[][] p = line(n, 4);
+		double[][] d = Decimator.decimate(p[0], p[1], n, 2000, 2999, 20);
+		assertEquals(1999, d[0][0], 0);
+		assertEquals(3000, d[0][d[0].length - 1], 0);
+		for (int i = 1; i < d[0].length - 1; i++)
+			assertTrue((d[0][i] >= 2000) && (d[0][i] <= 2999));
+		assertTrue(d[0].length <= 4 * 20 + 2);
+	}
+
+	@Test
+	public void descendingX() {
+		int n = 4000;
+		double[][] p = line(n, 5);
+		for (int i = 0; i < n; i++)
+			p[0][i] = n - 1 - i; // Like an exceedance curve drawn right to left
+		double[][] d = Decimator.decimate(p[0], p[1], n, 0, n - 1, 40);
+		assertTrue(d[0].length <= 4 * 40);
+		assertEquals(n - 1, d[0][0], 0);
+		assertEquals(0, d[0][d[0].length - 1], 0);
+		for (int i = 1; i < d[0].length; i++)
+			assertTrue(d[0][i - 1] > d[0][i]);
+	}
+}
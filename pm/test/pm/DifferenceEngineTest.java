@@ -0,0 +1,138 @@
+package pm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import hec.io.TimeSeriesContainer;
+
+public class DifferenceEngineTest {
+
+	private static TimeSeriesContainer series(String name, int[] times, double[] values) {
+		TimeSeriesContainer tsc = TestSeries.of(times, values);
+		tsc.fullName = name;
+		tsc.fileName = name + ".dss";
+		tsc.type = "PER-AVER";
+		tsc.interval = 43200;
+		return tsc;
+	}
+
+	@Test
+	public void sameTimes() {
+		TimeSeriesContainer base = series("/A/B/C//1MON/BASE/", new int[] { 10, 20, 30 }, new double[] { 1, 2, 3 });
+		TimeSeriesContainer alt = series("/A/B/C//1MON/ALT/", new int[] { 10, 20, 30 }, new double[] { 5, 5, 5 });
+		TimeSeriesContainer d = DifferenceEngine.difference(base, alt);
+		assertArrayEquals(new int[] { 10, 20, 30 }, d.times);
+		assertArrayEquals(new double[] { 4, 3, 2 }, d.values, 0);
+		assertEquals(3, d.numberValues);
+		assertEquals(10, d.startTime);
+		assertEquals(30, d.endTime);
+	}
+
+	@Test
+	public void offsetStartsCompareOnlyTheOverlap() {
+		TimeSeriesContainer base = series("base", new int[] { 10, 20, 30, 40 }, new double[] { 1, 2, 3, 4 });
+		TimeSeriesContainer alt = series("alt", new int[] { 30, 40, 50, 60 }, new double[] { 30, 40, 50, 60 });
+		TimeSeriesContainer d = DifferenceEngine.difference(base, alt);
+		assertArrayEquals(new int[] { 30, 40 }, d.times);
+		assertArrayEquals(new double[] { 27, 36 }, d.values, 0);
+
+		d = DifferenceEngine.difference(alt, base); // Base starting later
+		assertArrayEquals(new int[] { 30, 40 }, d.times);
+		assertArrayEquals(new double[] { -27, -36 }, d.values, 0);
+	}
+
+	@Test
+	public void gapsAreSkipped() {
+		TimeSeriesContainer base = series("base", new int[] { 10, 20, 40, 50 }, new double[] { 1, 2, 4, 5 });
+		TimeSeriesContainer alt = series("alt", new int[] { 10, 30, 40, 50 }, new double[] { 1, 3, 8, 10 });
+		TimeSeriesContainer d = DifferenceEngine.difference(base, alt);
+		assertArrayEquals(new int[] { 10, 40, 50 }, d.times);
+		assertArrayEquals(new double[] { 0, 4, 5 }, d.values, 0);
+		assertEquals(d.times.length, d.values.length);
+	}
+
+	@Test
+	public void noOverlap() {
+		TimeSeriesContainer base = series("base", new int[] { 10, 20 }, new double[] { 1, 2 });
+		TimeSeriesContainer alt = series("alt", new int[] { 30, 40 }, new double[] { 3, 4 });
+		TimeSeriesContainer d = DifferenceEngine.difference(base, alt);
+		assertEquals(0, d.numberValues);
+		assertEquals(0, d.times.length);
+	}
+
+	@Test
+	public void usesNumberValuesOnly() {
+		TimeSeriesContainer base = series("base", new int[] { 10, 20, 30 }, new double[] { 1, 2, 3 });
+		TimeSeriesContainer alt = series("alt", new int[] { 10, 20, 30 }, new double[] { 2, 4, 6 });
+		base.numberValues = 2;
+		TimeSeriesContainer d = DifferenceEngine.difference(base, alt);
+		assertArrayEquals(new int[] { 10, 20 }, d.times);
+		assertArrayEquals(new double[] { 1, 2 }, d.values, 0);
+	}
+
+	@Test
+	public void copiesFieldsOfTheAlternative() {
+		TimeSeriesContainer base = series("/A/B/C//1MON/BASE/", new int[] { 10 }, new double[] { 1 });
+		TimeSeriesContainer alt = series("/A/B/C//1MON/ALT/", new int[] { 10 }, new double[] { 2 });
+		alt.units = "TAF";
+		alt.type = "PER-CUM";
+		alt.interval = 1440;
+		TimeSeriesContainer d = DifferenceEngine.difference(base, alt);
+		assertEquals(alt.fullName, d.fullName);
+		assertEquals(alt.fileName, d.fileName);
+		assertEquals("TAF", d.units);
+		assertEquals("PER-CUM", d.type);
+		assertEquals(1440, d.interval);
+	}
+
+	@Test
+	public void matchesTimeLookup() {
+		Random random = new Random(5);
+		for (int trial = 0; trial < 200; trial++) {
+			TimeSeriesContainer base = randomSeries(random);
+			TimeSeriesContainer alt = randomSeries(random);
+			TimeSeriesContainer d = DifferenceEngine.difference(base, alt);
+
+			int n = 0;
+			for (int j = 0; j < alt.numberValues; j++)
+				for (int i = 0; i < base.numberValues; i++)
+					if (base.times[i] == alt.times[j]) {
+						assertEquals(alt.times[j], d.times[n]);
+						assertEquals(alt.values[j] - base.values[i], d.values[n++], 0);
+					}
+			assertEquals(n, d.numberValues);
+		}
+	}
+
+	private static TimeSeriesContainer randomSeries(Random random) {
+		int[] times = new int[random.nextInt(40)];
+		double[] values = new double[times.length];
+		int t = random.nextInt(20);
+		for (int i = 0; i < times.length; i++) {
+			t += 1 + random.nextInt(3);
+			times[i] = t;
+			values[i] = random.nextDouble();
+		}
+		return series("random", times, values);
+	}
+
+	@Test
+	public void differencesFromTheFirstSeries() {
+		TimeSeriesContainer base = series("base", new int[] { 10, 20 }, new double[] { 1, 2 });
+		TimeSeriesContainer a = series("a", new int[] { 10, 20 }, new double[] { 3, 3 });
+		TimeSeriesContainer b = series("b", new int[] { 20, 30 }, new double[] { 7, 7 });
+		TimeSeriesContainer c = series("c", new int[] { 10 }, new double[] { 0 });
+		TimeSeriesContainer[] d = DifferenceEngine.differences(new TimeSeriesContainer[] { base, a, b, c }, 3);
+		assertEquals(2, d.length); // c is beyond count
+		assertEquals("a", d[0].fullName);
+		assertArrayEquals(new double[] { 2, 1 }, d[0].values, 0);
+		assertEquals("b", d[1].fullName);
+		assertArrayEquals(new int[] { 20 }, d[1].times);
+		assertArrayEquals(new double[] { 5 }, d[1].values, 0);
+		assertEquals(0, DifferenceEngine.differences(new TimeSeriesContainer[] { base }, 1).length);
+	}
+}
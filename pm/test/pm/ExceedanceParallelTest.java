@@ -0,0 +1,84 @@
+package pm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * getExceedanceSeries must give the same results whether the grid is filled
+ * on the calling thread or across the fork/join pool.
+ */
+public class ExceedanceParallelTest {
+
+	private final int threshold = DSSGrabber1.exceedanceParallelThreshold;
+
+	@After
+	public void restoreThreshold() {
+		DSSGrabber1.exceedanceParallelThreshold = threshold;
+	}
+
+	private static TimeSeriesContainer[] scenarios(int count, int months, long seed) {
+		Random random = new Random(seed);
+		int first = WaterYearCalendar.parseYearMonth("01OCT1921");
+		TimeSeriesContainer[] tscs = new TimeSeriesContainer[count];
+		for (int i = 0; i < count; i++) {
+			double[] values = new double[months];
+			for (int j = 0; j < months; j++)
+				values[j] = random.nextInt(5) == 0 ? 0 : 5000 * random.nextDouble(); // With ties
+			tscs[i] = TestSeries.monthly(first, values);
+			tscs[i].fullName = "/A/S" + i + "/FLOW-CHANNEL//1MON/F/";
+		}
+		return tscs;
+	}
+
+	private static TimeSeriesContainer[][] exceedance(TimeSeriesContainer[] tscs, int threshold) {
+		DSSGrabber1 dg = new DSSGrabber1(null);
+		dg.setDateRange("OCT1921-SEP2921");
+		dg.setOriginalUnits("CFS");
+		dg.setIsCFS(true);
+		dg.calcTAFforCFS(tscs, null); // For the annual totals
+		DSSGrabber1.exceedanceParallelThreshold = threshold;
+		return dg.getExceedanceSeries(tscs);
+	}
+
+	@Test
+	public void parallelMatchesSerial() {
+		TimeSeriesContainer[] tscs = scenarios(8, 12000, 11);
+		TimeSeriesContainer[][] serial = exceedance(tscs, Integer.MAX_VALUE);
+		TimeSeriesContainer[][] parallel = exceedance(tscs, 0);
+
+		assertEquals(14, parallel.length);
+		for (int m = 0; m < 14; m++)
+			for (int i = 0; i < tscs.length; i++) {
+				String cell = "month " + m + ", scenario " + i;
+				TimeSeriesContainer s = serial[m][i];
+				TimeSeriesContainer p = parallel[m][i];
+				assertEquals(cell, s.numberValues, p.numberValues);
+				assertArrayEquals(cell, Arrays.copyOf(s.times, s.numberValues),
+						Arrays.copyOf(p.times, p.numberValues));
+				assertArrayEquals(cell, Arrays.copyOf(s.values, s.numberValues),
+						Arrays.copyOf(p.values, p.numberValues), 0);
+			}
+	}
+
+	@Test
+	public void monthlySetsAreSortedSubsets() {
+		TimeSeriesContainer[] tscs = scenarios(2, 240, 12);
+		TimeSeriesContainer[][] results = exceedance(tscs, 0);
+		for (int m = 0; m < 12; m++) {
+			TimeSeriesContainer r = results[m][0];
+			assertEquals(20, r.numberValues); // One per year
+			for (int j = 1; j < r.numberValues; j++)
+				assertTrue(r.values[j - 1] <= r.values[j]);
+		}
+		assertEquals(240, results[13][0].numberValues);
+	}
+}
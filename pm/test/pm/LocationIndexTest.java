@@ -0,0 +1,112 @@
+package pm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LocationIndexTest {
+
+	private static String[] row(String key, String primary) {
+		return new String[] { key, primary, primary + "_2", "y " + key, "title " + key, "s " + key };
+	}
+
+	/**
+	 * The scan DSSGrabber1.setLocation made before the index: the last row
+	 * whose key ends the name wins.
+	 *
+	 * @return primary DSS name of that row, or null
+	 */
+	private static String scan(String[][] rows, String name) {
+		String primary = null;
+		for (String[] row : rows)
+			if (name.endsWith(row[0]))
+				primary = row[1];
+		return primary;
+	}
+
+	private static String primary(LocationIndex.Location location) {
+		return location == null ? null : location.getPrimaryDSSName();
+	}
+
+	@Test
+	public void lastMatchingRowWins() {
+		String[][] links = { row("C_SAC", "first"), row("Ckp_C_SAC", "longer"), row("C_SAC", "last") };
+		LocationIndex index = new LocationIndex(links, null);
+		assertEquals("last", primary(index.find("Ckp_C_SAC"))); // Later than the longer key
+		assertEquals("last", primary(index.find("C_SAC")));
+		assertNull(index.find("C_SACX"));
+
+		links = new String[][] { row("C_SAC", "short"), row("p_C_SAC", "longer") };
+		index = new LocationIndex(links, null);
+		assertEquals("longer", primary(index.find("Ckp_C_SAC")));
+		assertEquals("short", primary(index.find("Ckq_C_SAC")));
+	}
+
+	@Test
+	public void allFieldsOfTheRow() {
+		LocationIndex.Location location = new LocationIndex(new String[][] { row("S_SHSTA", "S4/STORAGE") }, null)
+				.find("Ckb_S_SHSTA");
+		assertEquals("S4/STORAGE", location.getPrimaryDSSName());
+		assertEquals("S4/STORAGE_2", location.getSecondaryDSSName());
+		assertEquals("y S_SHSTA", location.getYLabel());
+		assertEquals("title S_SHSTA", location.getTitle());
+		assertEquals("s S_SHSTA", location.getSLabel());
+	}
+
+	@Test
+	public void schematicNamesUseTheirTableInUpperCase() {
+		LocationIndex index = new LocationIndex(new String[][] { row("SCHVW_X", "links") },
+				new String[][] { row("SCHVW_X", "schematic") });
+		assertEquals("schematic", primary(index.find("SchVw_x")));
+		assertEquals("links", primary(index.find("Ckb_SCHVW_X")));
+	}
+
+	@Test
+	public void missingTablesMatchNothing() {
+		LocationIndex index = new LocationIndex(null, null);
+		assertNull(index.find("C_SAC"));
+		assertNull(index.find("SchVw_C_SAC"));
+		index = new LocationIndex(new String[][] { null, { null, "a", "b", "c", "d", "e" } }, null);
+		assertNull(index.find("C_SAC"));
+	}
+
+	@Test
+	public void matchesScanOnRandomTables() {
+		Random random = new Random(3);
+		String alphabet = "AB_";
+		for (int trial = 0; trial < 200; trial++) {
+			String[][] rows = new String[1 + random.nextInt(30)][];
+			for (int i = 0; i < rows.length; i++)
+				rows[i] = row(randomString(random, alphabet, 1 + random.nextInt(4)), "row" + i);
+			LocationIndex index = new LocationIndex(rows, null);
+			for (int k = 0; k < 50; k++) {
+				String name = randomString(random, alphabet, random.nextInt(7));
+				assertEquals(name, scan(rows, name), primary(index.find(name)));
+			}
+		}
+	}
+
+	private static String randomString(Random random, String alphabet, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		return sb.toString();
+	}
+
+	@Test
+	public void powerAndPathnamesResolveWithoutTables() {
+		LocationIndex.Location power = LocationIndex.resolve(" *Keswick ");
+		assertEquals("*Keswick", power.getPrimaryDSSName());
+		assertEquals("*Keswick", power.getTitle());
+		assertEquals("", power.getSecondaryDSSName());
+
+		String pathname = "/CALSIM/C_SAC000/FLOW-CHANNEL/01JAN1920/1MON/2020D09E/";
+		LocationIndex.Location path = LocationIndex.resolve(pathname);
+		assertEquals("C_SAC000/FLOW-CHANNEL/2020D09E", path.getPrimaryDSSName());
+		assertEquals(pathname, path.getTitle());
+		assertEquals("", path.getYLabel());
+	}
+}
@@ -0,0 +1,108 @@
+package pm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import hec.io.TimeSeriesContainer;
+
+public class PathExpressionTest {
+
+	private static TimeSeriesContainer record(int[] times, double[] values) {
+		TimeSeriesContainer tsc = TestSeries.of(times, values);
+		tsc.fullName = "/A/" + values[0] + "/FLOW//1MON/F/";
+		return tsc;
+	}
+
+	@Test
+	public void parsesSignsScalesAndShifts() {
+		List<PathExpression.Term> terms = PathExpression.compile("D_A/FLOW+0.5*D_B/FLOW - D_C/FLOW(-1)")
+				.getTerms();
+		assertEquals(3, terms.size());
+		assertEquals("D_A/FLOW", terms.get(0).getName());
+		assertEquals(1.0, terms.get(0).getCoefficient(), 0);
+		assertEquals("D_B/FLOW", terms.get(1).getName());
+		assertEquals(0.5, terms.get(1).getCoefficient(), 0);
+		assertEquals("D_C/FLOW", terms.get(2).getName());
+		assertEquals(-1.0, terms.get(2).getCoefficient(), 0);
+		assertEquals(-1, terms.get(2).getShift());
+	}
+
+	@Test
+	public void minusNeedsSpacesAndLeadingMinusNegates() {
+		List<PathExpression.Term> terms = PathExpression.compile("-2*S-1/STORAGE-LEVEL(+1)").getTerms();
+		assertEquals(1, terms.size());
+		assertEquals("S-1/STORAGE-LEVEL", terms.get(0).getName());
+		assertEquals(-2.0, terms.get(0).getCoefficient(), 0);
+		assertEquals(1, terms.get(0).getShift());
+	}
+
+	@Test
+	public void simpleAndCached() {
+		assertTrue(PathExpression.compile("C_X/FLOW-CHANNEL").isSimple());
+		assertFalse(PathExpression.compile("2*C_X/FLOW-CHANNEL").isSimple());
+		assertSame(PathExpression.compile("C_X/FLOW-CHANNEL"), PathExpression.compile("C_X/FLOW-CHANNEL"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyTerm() {
+		PathExpression.compile("C_X/FLOW+");
+	}
+
+	@Test
+	public void evaluatesAlignedRecords() {
+		TimeSeriesContainer a = record(new int[] { 10, 20, 30 }, new double[] { 1, 2, 3 });
+		TimeSeriesContainer b = record(new int[] { 10, 20, 30 }, new double[] { 10, 20, 30 });
+		TimeSeriesContainer r = PathExpression.compile("A + 0.5*B").evaluate(new TimeSeriesContainer[] { a, b });
+		assertArrayEquals(new int[] { 10, 20, 30 }, r.times);
+		assertArrayEquals(new double[] { 6, 12, 18 }, r.values, 1e-12);
+		assertEquals(10, r.startTime);
+		assertEquals(30, r.endTime);
+		assertEquals(a.fullName, r.fullName);
+	}
+
+	@Test
+	public void alignsRecordsWithDifferentStarts() {
+		TimeSeriesContainer a = record(new int[] { 10, 20, 30, 40 }, new double[] { 1, 2, 3, 4 });
+		TimeSeriesContainer b = record(new int[] { 30, 40, 50 }, new double[] { 30, 40, 50 });
+		TimeSeriesContainer r = PathExpression.compile("A - B").evaluate(new TimeSeriesContainer[] { a, b });
+		assertArrayEquals(new int[] { 30, 40 }, r.times);
+		assertArrayEquals(new double[] { -27, -36 }, r.values, 1e-12);
+	}
+
+	@Test
+	public void skipsTimesMissingFromAnyTerm() {
+		TimeSeriesContainer a = record(new int[] { 10, 20, 30, 40 }, new double[] { 1, 2, 3, 4 });
+		TimeSeriesContainer b = record(new int[] { 10, 30, 40 }, new double[] { 10, 30, 40 });
+		TimeSeriesContainer c = record(new int[] { 10, 20, 30 }, new double[] { 100, 200, 300 });
+		TimeSeriesContainer r = PathExpression.compile("A+B+C").evaluate(new TimeSeriesContainer[] { a, b, c });
+		assertArrayEquals(new int[] { 10, 30 }, r.times);
+		assertArrayEquals(new double[] { 111, 333 }, r.values, 1e-12);
+	}
+
+	@Test
+	public void shiftTakesEarlierStepOfTheTerm() {
+		TimeSeriesContainer a = record(new int[] { 10, 20, 30 }, new double[] { 1, 2, 3 });
+		TimeSeriesContainer b = record(new int[] { 10, 20, 30 }, new double[] { 10, 20, 30 });
+		TimeSeriesContainer r = PathExpression.compile("A + B(-1)").evaluate(new TimeSeriesContainer[] { a, b });
+		assertArrayEquals(new int[] { 20, 30 }, r.times);
+		assertArrayEquals(new double[] { 12, 23 }, r.values, 1e-12);
+
+		r = PathExpression.compile("A(+1)").evaluate(new TimeSeriesContainer[] { a });
+		assertArrayEquals(new int[] { 10, 20 }, r.times);
+		assertArrayEquals(new double[] { 2, 3 }, r.values, 1e-12);
+	}
+
+	@Test
+	public void leavesOutMissingTerms() {
+		TimeSeriesContainer a = record(new int[] { 10, 20 }, new double[] { 1, 2 });
+		TimeSeriesContainer r = PathExpression.compile("A+B").evaluate(new TimeSeriesContainer[] { a, null });
+		assertArrayEquals(new double[] { 1, 2 }, r.values, 1e-12);
+	}
+}
@@ -0,0 +1,135 @@
+package pm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantileSketchTest {
+
+	private static double[] data(int n, long seed) {
+		Random random = new Random(seed);
+		double[] v = new double[n];
+		for (int j = 0; j < n; j++)
+			v[j] = random.nextGaussian() * 1000 + (j % 12) * 50; // Seasonal, unordered
+		return v;
+	}
+
+	/**
+	 * @return difference between each requested rank (percentiles 1 to 99)
+	 *         and the true rank of the value returned for it
+	 */
+	private static double[] rankErrors(QuantileSketch sketch, double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		double[] errors = new double[99];
+		for (int p = 1; p < 100; p++) {
+			double f = p / 100.0;
+			double q = sketch.getQuantile(f);
+			double rankLo = (double) lowerBound(sorted, q) / sorted.length;
+			double rankHi = (double) lowerBound(sorted, Math.nextUp(q)) / sorted.length;
+			errors[p - 1] = (f < rankLo) ? rankLo - f : (f > rankHi) ? f - rankHi : 0;
+		}
+		return errors;
+	}
+
+	/**
+	 * The normalized rank error is a bound for a single quantile with 99%
+	 * confidence, so over 99 percentiles a few may exceed it, but not by much.
+	 */
+	private static void assertWithinBound(String message, double[] errors, int k) {
+		double bound = QuantileSketch.getNormalizedRankError(k);
+		int over = 0;
+		for (double error : errors) {
+			assertTrue(message + ": error " + error, error <= 1.5 * bound);
+			if (error > bound)
+				over++;
+		}
+		assertTrue(message + ": " + over + " percentiles over " + bound, over <= 5);
+	}
+
+	private static int lowerBound(double[] sorted, double x) {
+		int lo = 0;
+		int hi = sorted.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] < x)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	@Test
+	public void rankErrorWithinBound() {
+		double[] values = data(200000, 1);
+		for (int k : new int[] { 100, QuantileSketch.DEFAULT_K }) {
+			QuantileSketch sketch = new QuantileSketch(k);
+			sketch.update(values, 0, values.length);
+			assertEquals(values.length, sketch.getCount());
+			assertWithinBound("k = " + k, rankErrors(sketch, values), k);
+		}
+	}
+
+	@Test
+	public void exactWhileSmall() {
+		double[] values = data(100, 2);
+		QuantileSketch sketch = new QuantileSketch();
+		for (double v : values)
+			sketch.update(v);
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		assertEquals(sorted[49], sketch.getQuantile(0.5), 0);
+		assertEquals(sorted[0], sketch.getMin(), 0);
+		assertEquals(sorted[99], sketch.getMax(), 0);
+	}
+
+	@Test
+	public void mergeKeepsCountExtremesAndAccuracy() {
+		double[] values = data(120000, 3);
+		QuantileSketch a = new QuantileSketch();
+		QuantileSketch b = new QuantileSketch();
+		a.update(values, 0, 50000);
+		b.update(values, 50000, values.length - 50000);
+		a.merge(b);
+
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		assertEquals(values.length, a.getCount());
+		assertEquals(sorted[0], a.getQuantile(0), 0);
+		assertEquals(sorted[sorted.length - 1], a.getQuantile(1), 0);
+		assertWithinBound("merged", rankErrors(a, values), QuantileSketch.DEFAULT_K);
+	}
+
+	@Test
+	public void sameInputSameSketch() {
+		double[] values = data(50000, 4);
+		double[] fractions = { 0.1, 0.25, 0.5, 0.75, 0.9 };
+		QuantileSketch a = new QuantileSketch();
+		QuantileSketch b = new QuantileSketch();
+		a.update(values, 0, values.length);
+		b.update(values, 0, values.length);
+		assertArrayEquals(a.getQuantiles(fractions), b.getQuantiles(fractions), 0);
+	}
+
+	@Test
+	public void emptyAndParameters() {
+		QuantileSketch sketch = new QuantileSketch();
+		assertTrue(sketch.isEmpty());
+		assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+		assertTrue(QuantileSketch.getNormalizedRankError(200) < 0.014);
+		int k = QuantileSketch.kForError(0.01);
+		assertTrue(QuantileSketch.getNormalizedRankError(k) <= 0.01);
+		assertTrue(QuantileSketch.getNormalizedRankError(k - 1) > 0.01);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsTinyK() {
+		new QuantileSketch(QuantileSketch.MIN_WIDTH - 1);
+	}
+}
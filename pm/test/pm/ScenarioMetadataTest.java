@@ -0,0 +1,109 @@
+package pm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScenarioMetadataTest {
+
+	private File dir;
+
+	@Before
+	public void createDir() throws IOException {
+		dir = File.createTempFile("scenario", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@After
+	public void deleteDir() {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	private File cls(String name, String... lines) throws IOException {
+		File f = new File(dir, name);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(f), "ISO-8859-1");
+		try {
+			for (String line : lines)
+				writer.write(line + "\r\n");
+		} finally {
+			writer.close();
+		}
+		return f;
+	}
+
+	@Test
+	public void firstEntryWins() throws IOException {
+		File f = cls("first.cls", "Dynamic_SJR|true|", "Dynamic_SJR|false|", "fac_ckb3|false", "|ignored|",
+				"no bar here");
+		ScenarioMetadata m = ScenarioMetadata.forClsFile(f.getPath());
+		assertEquals("true", m.get("Dynamic_SJR"));
+		assertTrue(m.isDynamicSJR());
+		assertEquals("false", m.get("fac_ckb3")); // Value up to the end of the line
+		assertFalse(m.isLVE());
+		assertNull(m.get(""));
+		assertNull(m.get("no bar here"));
+	}
+
+	@Test
+	public void cachedUntilModified() throws IOException {
+		File f = cls("cached.cls", "CkbReg_AN|true|");
+		f.setLastModified(1000000000000L);
+		ScenarioMetadata m = ScenarioMetadata.forClsFile(f.getPath());
+		assertSame(m, ScenarioMetadata.forClsFile(f.getPath()));
+		assertTrue(m.isAntiochChipps());
+
+		cls("cached.cls", "CkbReg_AN|false|");
+		f.setLastModified(1000000060000L);
+		ScenarioMetadata changed = ScenarioMetadata.forClsFile(f.getPath());
+		assertNotSame(m, changed);
+		assertFalse(changed.isAntiochChipps());
+	}
+
+	@Test
+	public void missingFileHasNoSettings() {
+		ScenarioMetadata m = ScenarioMetadata.forClsFile(new File(dir, "none.cls").getPath());
+		assertNull(m.get("Dynamic_SJR"));
+		assertFalse(m.isDynamicSJR());
+		assertFalse(m.isAntiochChipps());
+		assertFalse(m.isLVE());
+	}
+
+	@Test
+	public void dvFileNamesItsClsFile() throws IOException {
+		cls("run.cls", "fac_ckb3|true|");
+		ScenarioMetadata m = ScenarioMetadata.forDvFile(new File(dir, "run_DV.DSS").getPath());
+		assertTrue(m.isLVE());
+	}
+
+	@Test
+	public void missingReasons() throws IOException {
+		ScenarioMetadata off = ScenarioMetadata.forClsFile(cls("off.cls", "Dynamic_SJR|false|").getPath());
+		assertNotNull(off.missingReason("S_MELON/STORAGE"));
+		assertNotNull(off.missingReason("AN_EC_STD/SALINITY"));
+		assertNotNull(off.missingReason("S422/STORAGE"));
+		assertNull(off.missingReason("S_SHSTA/STORAGE"));
+
+		ScenarioMetadata on = ScenarioMetadata
+				.forClsFile(cls("on.cls", "Dynamic_SJR|true|", "CkbReg_AN|true|", "fac_ckb3|true|").getPath());
+		assertNull(on.missingReason("S_MELON/STORAGE"));
+		assertNull(on.missingReason("AN_EC_STD/SALINITY"));
+		assertNull(on.missingReason("S422/STORAGE"));
+	}
+}
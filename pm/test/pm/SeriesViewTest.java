@@ -0,0 +1,97 @@
+package pm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import hec.io.TimeSeriesContainer;
+
+public class SeriesViewTest {
+
+	private static TimeSeriesContainer series(int[] times) {
+		double[] values = new double[times.length];
+		for (int i = 0; i < times.length; i++)
+			values[i] = times[i] / 10.0;
+		return TestSeries.of(times, values);
+	}
+
+	private static int[] times(SeriesView v) {
+		int[] t = new int[v.size()];
+		for (int i = 0; i < t.length; i++)
+			t[i] = v.getTime(i);
+		return t;
+	}
+
+	@Test
+	public void windowKeepsFirstValueAfterEndTime() {
+		SeriesView v = SeriesView.of(series(new int[] { 10, 20, 30, 40, 50 }));
+		assertArrayEquals(new int[] { 20, 30, 40 }, times(v.window(20, 30)));
+		assertArrayEquals(new int[] { 20, 30, 40 }, times(v.window(15, 35)));
+		assertArrayEquals(new int[] { 10, 20, 30, 40, 50 }, times(v.window(0, 100)));
+		assertArrayEquals(new int[] { 50 }, times(v.window(50, 50)));
+	}
+
+	@Test
+	public void windowOutsideSeries() {
+		SeriesView v = SeriesView.of(series(new int[] { 10, 20, 30 }));
+		assertEquals(0, v.window(40, 100).size());
+		assertArrayEquals(new int[] { 10 }, times(v.window(0, 5))); // First value after the range
+	}
+
+	@Test
+	public void windowMatchesLinearTrim() {
+		Random random = new Random(7);
+		for (int trial = 0; trial < 500; trial++) {
+			int[] t = new int[random.nextInt(30)];
+			for (int i = 0; i < t.length; i++)
+				t[i] = (i == 0 ? 0 : t[i - 1]) + 1 + random.nextInt(3);
+			SeriesView v = SeriesView.of(series(t));
+			int start = random.nextInt(100) - 10;
+			int end = start + random.nextInt(60);
+
+			// The trimming loops DSSGrabber1 used before views
+
+			int first = 0;
+			for (int i = 0; (i < t.length) && (t[i] < start); i++)
+				first = i + 1;
+			int last = t.length - 1;
+			for (int i = t.length - 1; (i >= 0) && (t[i] > end); i--)
+				last = i;
+			int[] expected = new int[Math.max(0, last - first + 1)];
+			System.arraycopy(t, first, expected, 0, expected.length);
+			assertArrayEquals(expected, times(v.window(start, end)));
+		}
+	}
+
+	@Test
+	public void windowOfWindowStaysInside() {
+		SeriesView v = SeriesView.of(series(new int[] { 10, 20, 30, 40, 50 })).window(20, 30);
+		assertArrayEquals(new int[] { 20, 30, 40 }, times(v.window(0, 100)));
+		assertArrayEquals(new int[] { 30, 40 }, times(v.window(25, 30)));
+	}
+
+	@Test
+	public void ofUsesNumberValuesOnly() {
+		TimeSeriesContainer tsc = series(new int[] { 10, 20, 30, 40 });
+		tsc.numberValues = 2;
+		assertArrayEquals(new int[] { 10, 20 }, times(SeriesView.of(tsc).window(0, 100)));
+	}
+
+	@Test
+	public void toContainerCopiesTheWindow() {
+		TimeSeriesContainer tsc = series(new int[] { 10, 20, 30, 40 });
+		TimeSeriesContainer out = SeriesView.of(tsc).window(20, 20).toContainer(tsc);
+		assertArrayEquals(new int[] { 20, 30 }, out.times);
+		assertArrayEquals(new double[] { 2.0, 3.0 }, out.values, 0);
+		assertEquals(2, out.numberValues);
+		assertEquals(20, out.startTime);
+		assertEquals(30, out.endTime);
+		assertEquals("CFS", out.units);
+		assertEquals(tsc.fullName, out.fullName);
+		assertNotSame(tsc.times, out.times);
+	}
+}
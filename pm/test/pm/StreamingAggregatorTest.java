@@ -0,0 +1,129 @@
+package pm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import hec.io.TimeSeriesContainer;
+
+public class StreamingAggregatorTest {
+
+	/**
+	 * Collects the water-year totals emitted.
+	 */
+	private static class Totals implements StreamingAggregator.Listener {
+		final List<Integer> years = new ArrayList<Integer>();
+		final List<Double> totals = new ArrayList<Double>();
+		final List<Integer> months = new ArrayList<Integer>();
+
+		@Override
+		public void waterYear(int waterYear, double total, int months) {
+			years.add(waterYear);
+			totals.add(total);
+			this.months.add(months);
+		}
+	}
+
+	/**
+	 * @return monthly series stamped at the end of each month
+	 */
+	private static TimeSeriesContainer monthly(int firstYearMonth, int n, long seed) {
+		Random random = new Random(seed);
+		double[] values = new double[n];
+		for (int j = 0; j < n; j++)
+			values[j] = 1000 * random.nextDouble();
+		return TestSeries.monthly(firstYearMonth, values);
+	}
+
+	/**
+	 * Feeds a series in chunks of the given size.
+	 */
+	private static void feed(StreamingAggregator agg, TimeSeriesContainer tsc, int chunk) {
+		for (int j = 0; j < tsc.numberValues; j += chunk)
+			agg.add(tsc.times, tsc.values, j, Math.min(chunk, tsc.numberValues - j));
+		agg.finish();
+	}
+
+	@Test
+	public void volumesMatchCalcTAFforCFS() {
+		TimeSeriesContainer tsc = monthly(WaterYearCalendar.parseYearMonth("01OCT1921"), 120, 1);
+
+		DSSGrabber1 dg = new DSSGrabber1(null);
+		dg.setDateRange("OCT1921-SEP1931");
+		dg.setOriginalUnits("CFS");
+		dg.setIsCFS(true); // Leave the values as read
+		dg.calcTAFforCFS(new TimeSeriesContainer[] { tsc }, null);
+
+		Totals totals = new Totals();
+		feed(StreamingAggregator.volumes(DSSGrabber1.CFS_2_TAF_DAY, totals), tsc, 7);
+
+		assertEquals(10, totals.years.size());
+		for (int k = 0; k < totals.years.size(); k++) {
+			int wy = totals.years.get(k);
+			assertEquals(1922 + k, wy);
+			assertEquals(12, (int) totals.months.get(k));
+			assertEquals("WY " + wy, dg.getAnnualTAF(0, wy), totals.totals.get(k), 1e-9);
+		}
+	}
+
+	@Test
+	public void chunkSizeDoesNotMatter() {
+		TimeSeriesContainer tsc = monthly(WaterYearCalendar.parseYearMonth("01FEB1924"), 400, 2);
+		Totals whole = new Totals();
+		feed(StreamingAggregator.sums(whole), tsc, tsc.numberValues);
+		for (int chunk : new int[] { 1, 5, 12, 120 }) {
+			Totals chunked = new Totals();
+			feed(StreamingAggregator.sums(chunked), tsc, chunk);
+			assertEquals(whole.years, chunked.years);
+			assertEquals(whole.months, chunked.months);
+			for (int k = 0; k < whole.totals.size(); k++)
+				assertEquals(whole.totals.get(k), chunked.totals.get(k), 1e-9);
+		}
+	}
+
+	@Test
+	public void partialYearsAndSums() {
+
+		// FEB1924 to DEC1925: 8 months of WY1924, 12 of WY1925, 3 of WY1926
+
+		TimeSeriesContainer tsc = monthly(WaterYearCalendar.parseYearMonth("01FEB1924"), 23, 3);
+		Totals totals = new Totals();
+		feed(StreamingAggregator.sums(totals), tsc, 10);
+		assertEquals(3, totals.years.size());
+		assertEquals(Integer.valueOf(1924), totals.years.get(0));
+		assertEquals(Integer.valueOf(8), totals.months.get(0));
+		assertEquals(Integer.valueOf(12), totals.months.get(1));
+		assertEquals(Integer.valueOf(3), totals.months.get(2));
+		double sum = 0;
+		for (int j = 0; j < 8; j++)
+			sum += tsc.values[j];
+		assertEquals(sum, totals.totals.get(0), 1e-9);
+	}
+
+	@Test
+	public void monthlyMeansAndExtremes() {
+		TimeSeriesContainer tsc = monthly(WaterYearCalendar.parseYearMonth("01JAN1930"), 36, 4);
+		StreamingAggregator agg = StreamingAggregator.sums(null);
+		feed(agg, tsc, 12);
+		assertEquals(36, agg.getCount());
+		assertEquals((tsc.values[0] + tsc.values[12] + tsc.values[24]) / 3, agg.getMonthlyMean(1), 1e-9);
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		int minTime = 0;
+		for (int j = 0; j < 36; j++) {
+			if (tsc.values[j] < min) {
+				min = tsc.values[j];
+				minTime = tsc.times[j];
+			}
+			max = Math.max(max, tsc.values[j]);
+		}
+		assertEquals(min, agg.getMin(), 0);
+		assertEquals(max, agg.getMax(), 0);
+		assertEquals(minTime, agg.getMinTime());
+		assertEquals(Double.NaN, StreamingAggregator.sums(null).getMin(), 0);
+	}
+}
@@ -0,0 +1,45 @@
+package pm;
+
+import hec.io.TimeSeriesContainer;
+
+/**
+ * Builds the series the tests read, trim and combine.
+ */
+final class TestSeries {
+
+	static final String NAME = "/A/B/C//1MON/F/";
+
+	private TestSeries() {
+	}
+
+	/**
+	 * @param times
+	 *            HEC times, ascending
+	 * @param values
+	 *            values, one per time
+	 * @return series in CFS named NAME, using the arrays as given
+	 */
+	static TimeSeriesContainer of(int[] times, double[] values) {
+		TimeSeriesContainer tsc = new TimeSeriesContainer();
+		tsc.times = times;
+		tsc.values = values;
+		tsc.numberValues = times.length;
+		tsc.units = "CFS";
+		tsc.fullName = NAME;
+		return tsc;
+	}
+
+	/**
+	 * @param firstYearMonth
+	 *            month of the first value (see WaterYearCalendar)
+	 * @param values
+	 *            monthly values
+	 * @return series as for of, stamped at the end of each month
+	 */
+	static TimeSeriesContainer monthly(int firstYearMonth, double[] values) {
+		int[] times = new int[values.length];
+		for (int j = 0; j < times.length; j++)
+			times[j] = WaterYearCalendar.endOfMonth(firstYearMonth + j);
+		return of(times, values);
+	}
+}
@@ -0,0 +1,92 @@
+package pm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+public class WaterYearCalendarTest {
+
+	private static final LocalDateTime HEC_EPOCH = LocalDateTime.of(1899, 12, 31, 0, 0);
+
+	private static int ym(int year, int month) {
+		return year * 12 + month - 1;
+	}
+
+	/**
+	 * @return HEC time of a date and time
+	 */
+	private static int hec(int year, int month, int day, int hour, int minute) {
+		LocalDateTime t = LocalDate.of(year, month, day).atStartOfDay().plusHours(hour).plusMinutes(minute);
+		return (int) Duration.between(HEC_EPOCH, t).toMinutes();
+	}
+
+	@Test
+	public void epoch() {
+		assertEquals(ym(1899, 12), WaterYearCalendar.yearMonth(1)); // 31DEC1899 0001
+		assertEquals(ym(1899, 12), WaterYearCalendar.yearMonth(1440)); // 31DEC1899 2400
+		assertEquals(ym(1900, 1), WaterYearCalendar.yearMonth(1441));
+		assertEquals(hec(1970, 1, 1, 0, 0), WaterYearCalendar.EPOCH_JULIAN * WaterYearCalendar.MINUTES_PER_DAY);
+	}
+
+	@Test
+	public void endOfMonthIsStampedAt2400() {
+		int t = WaterYearCalendar.endOfMonth(ym(1930, 1));
+		assertEquals(hec(1930, 2, 1, 0, 0), t); // 31JAN1930 2400
+		assertEquals(ym(1930, 1), WaterYearCalendar.yearMonth(t));
+		assertEquals(ym(1930, 2), WaterYearCalendar.yearMonth(t + 1));
+		assertEquals(ym(1930, 1), WaterYearCalendar.yearMonth(t - 1));
+	}
+
+	@Test
+	public void leapFebruaries() {
+		assertEquals(29, WaterYearCalendar.daysInMonth(ym(2000, 2)));
+		assertEquals(28, WaterYearCalendar.daysInMonth(ym(1900, 2)));
+		assertEquals(29, WaterYearCalendar.daysInMonth(ym(1924, 2)));
+		assertEquals(28, WaterYearCalendar.daysInMonth(ym(2003, 2)));
+		assertEquals(28, WaterYearCalendar.daysInMonth(ym(2100, 2)));
+		assertTrue(WaterYearCalendar.isLeapYear(2000));
+		assertFalse(WaterYearCalendar.isLeapYear(1900));
+		assertEquals(29 * 1440, WaterYearCalendar.endOfMonth(ym(1924, 2)) - WaterYearCalendar.endOfMonth(ym(1924, 1)));
+		assertEquals(ym(1924, 2), WaterYearCalendar.yearMonth(hec(1924, 2, 29, 12, 0)));
+	}
+
+	@Test
+	public void matchesJavaTimeForEveryMonth() {
+		for (int year = 1850; year <= 2100; year++)
+			for (int month = 1; month <= 12; month++) {
+				LocalDate first = LocalDate.of(year, month, 1);
+				LocalDate next = first.plusMonths(1);
+				assertEquals(hec(next.getYear(), next.getMonthValue(), 1, 0, 0),
+						WaterYearCalendar.endOfMonth(ym(year, month)));
+				assertEquals(first.lengthOfMonth(), WaterYearCalendar.daysInMonth(ym(year, month)));
+				for (int day : new int[] { 1, 15, first.lengthOfMonth() })
+					assertEquals(ym(year, month), WaterYearCalendar.yearMonth(hec(year, month, day, 12, 0)));
+			}
+	}
+
+	@Test
+	public void waterYears() {
+		assertEquals(1930, WaterYearCalendar.waterYear(ym(1929, 10)));
+		assertEquals(1930, WaterYearCalendar.waterYear(ym(1930, 9)));
+		assertEquals(1931, WaterYearCalendar.waterYear(ym(1930, 10)));
+		assertEquals(1930, WaterYearCalendar.year(ym(1930, 12)));
+		assertEquals(12, WaterYearCalendar.month(ym(1930, 12)));
+	}
+
+	@Test
+	public void parseYearMonth() {
+		assertEquals(ym(1930, 1), WaterYearCalendar.parseYearMonth("01JAN1930"));
+		assertEquals(ym(2003, 9), WaterYearCalendar.parseYearMonth("30sep2003"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void parseYearMonthRejectsBadMonth() {
+		WaterYearCalendar.parseYearMonth("01XYZ1930");
+	}
+}